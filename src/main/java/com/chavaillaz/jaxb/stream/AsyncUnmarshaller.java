@@ -0,0 +1,248 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.fasterxml.aalto.AsyncByteBufferFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import static com.fasterxml.aalto.AsyncXMLStreamReader.EVENT_INCOMPLETE;
+import static javax.xml.stream.XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES;
+import static javax.xml.stream.XMLInputFactory.SUPPORT_DTD;
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * Unmarshaller reading XML from chunks of bytes given as they are received, without ever blocking on I/O.
+ * <p>
+ * The bytes are parsed by the non-blocking parser of Aalto (which has to be added to the dependencies), and each
+ * element (direct child of the root element) is given to the consumer as soon as it has been fully received.
+ * As no thread waits for the bytes to come, a single thread can handle many streams concurrently.
+ * The events of the element being received are recorded as they are parsed, and replayed to its codec
+ * (or to JAXB) once complete, so that the bytes are only parsed once.
+ * <p>
+ * You can use it by giving the bytes yourself:
+ * <pre>
+ *     AsyncUnmarshaller unmarshaller = new AsyncUnmarshaller(engine, (type, element) -&gt; doSomething(element));
+ *     unmarshaller.feed(buffer);
+ *     unmarshaller.endOfInput();
+ * </pre>
+ * or by reading a file asynchronously:
+ * <pre>
+ *     unmarshaller.read(AsynchronousFileChannel.open(file)).thenAccept(count -&gt; doSomething(count));
+ * </pre>
+ * Please note that the consumer is called by the thread feeding the bytes.
+ */
+@Slf4j
+public class AsyncUnmarshaller implements Closeable {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final AsyncXMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final Map<Class<?>, Unmarshaller> unmarshallerCache = new HashMap<>();
+    private final ReplayStreamReader recorder = new ReplayStreamReader();
+    private final AsyncXMLStreamReader<AsyncByteBufferFeeder> reader = INPUT_FACTORY.createAsyncForByteBuffer();
+    private final StreamingEngine engine;
+    private final BiConsumer<Class<?>, Object> consumer;
+    private Class<?> currentType;
+    private boolean recording;
+    private boolean skipping;
+    private int depth;
+    private volatile long count;
+
+    /**
+     * Creates a new asynchronous unmarshaller reading the element types of the given engine.
+     *
+     * @param engine   The engine holding the types configuration
+     * @param consumer The consumer called for each element, as soon as it has been fully received
+     */
+    public AsyncUnmarshaller(@NonNull StreamingEngine engine, @NonNull BiConsumer<Class<?>, Object> consumer) {
+        this.engine = engine;
+        this.consumer = consumer;
+    }
+
+    private static AsyncXMLInputFactory createInputFactory() {
+        AsyncXMLInputFactory factory = new InputFactoryImpl();
+        // Deny all access to external references
+        factory.setProperty(IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(SUPPORT_DTD, false);
+        return factory;
+    }
+
+    /**
+     * Feeds the given bytes to the parser, and gives the elements completed by them to the consumer.
+     * The buffer is fully consumed when this method returns, so that it can be reused for the next bytes.
+     *
+     * @param buffer The next bytes of the stream
+     * @throws XMLStreamException if an error was encountered while parsing the bytes
+     * @throws JAXBException      if an error was encountered while unmarshalling an element
+     */
+    public synchronized void feed(@NonNull ByteBuffer buffer) throws XMLStreamException, JAXBException {
+        if (buffer.hasRemaining()) {
+            reader.getInputFeeder().feedInput(buffer);
+            drain();
+        }
+    }
+
+    /**
+     * Indicates that all the bytes of the stream have been given.
+     *
+     * @throws XMLStreamException if the stream is incomplete or if an error was encountered while parsing it
+     * @throws JAXBException      if an error was encountered while unmarshalling an element
+     */
+    public synchronized void endOfInput() throws XMLStreamException, JAXBException {
+        reader.getInputFeeder().endOfInput();
+        drain();
+        if (depth > 0) {
+            throw new XMLStreamException("Unexpected end of input in an element");
+        }
+    }
+
+    /**
+     * Reads the whole given channel asynchronously, feeding its bytes as they are read.
+     * This unmarshaller is closed when the reading ends, successfully or not.
+     *
+     * @param channel The channel to read (closed when the reading ends)
+     * @return The future completed with the number of elements read, or exceptionally with the error encountered
+     */
+    public CompletableFuture<Long> read(@NonNull AsynchronousFileChannel channel) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        channel.read(buffer, 0, 0L, new CompletionHandler<>() {
+
+            @Override
+            public void completed(Integer length, Long position) {
+                try {
+                    if (length < 0) {
+                        endOfInput();
+                        closeQuietly(channel);
+                        close();
+                        result.complete(getCount());
+                        return;
+                    }
+                    buffer.flip();
+                    feed(buffer);
+                    buffer.clear();
+                    channel.read(buffer, position + length, position + length, this);
+                } catch (Exception e) {
+                    failed(e, position);
+                }
+            }
+
+            @Override
+            public void failed(Throwable error, Long position) {
+                closeQuietly(channel);
+                closeQuietly(AsyncUnmarshaller.this);
+                result.completeExceptionally(error);
+            }
+
+        });
+        return result;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Nothing more can be done
+        }
+    }
+
+    /**
+     * Gets the number of elements given to the consumer so far, without waiting for the bytes being fed.
+     *
+     * @return The number of elements read
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Handles all the events available with the bytes fed so far.
+     */
+    private void drain() throws XMLStreamException, JAXBException {
+        int eventType;
+        while (reader.hasNext() && (eventType = reader.next()) != EVENT_INCOMPLETE) {
+            if (eventType == START_ELEMENT) {
+                depth++;
+                if (depth == 2) {
+                    startElement();
+                }
+            }
+            if (recording) {
+                recorder.record(reader);
+            }
+            if (eventType == END_ELEMENT) {
+                if (depth == 2) {
+                    endElement();
+                }
+                depth--;
+            }
+        }
+    }
+
+    private void startElement() throws XMLStreamException {
+        currentType = engine.getType(reader.getNamespaceURI(), reader.getLocalName());
+        skipping = currentType == null;
+        if (skipping && !engine.isSkipUnknown()) {
+            throw new XMLStreamException("No type registered for element " + reader.getName(), reader.getLocation());
+        }
+        if (!skipping) {
+            recorder.clear(currentType);
+            recording = true;
+        }
+    }
+
+    private void endElement() throws XMLStreamException, JAXBException {
+        if (skipping) {
+            skipping = false;
+            return;
+        }
+        recording = false;
+        recorder.recordContext(reader);
+        recorder.rewind();
+
+        ElementCodec<?> codec = engine.getCodec(currentType);
+        Object element = codec != null
+                ? codec.read(recorder)
+                : getUnmarshaller(currentType).unmarshal(recorder, currentType).getValue();
+        count++;
+        consumer.accept(currentType, element);
+    }
+
+    private Unmarshaller getUnmarshaller(Class<?> type) throws JAXBException {
+        Unmarshaller unmarshaller = unmarshallerCache.get(type);
+        if (unmarshaller == null) {
+            unmarshaller = engine.getContext(type).createUnmarshaller();
+            unmarshallerCache.put(type, unmarshaller);
+        }
+        return unmarshaller;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            log.error("Unable to close XML stream reader", e);
+        } finally {
+            currentType = null;
+            recording = false;
+            skipping = false;
+            depth = 0;
+        }
+    }
+
+}
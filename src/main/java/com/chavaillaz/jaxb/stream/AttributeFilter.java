@@ -0,0 +1,27 @@
+package com.chavaillaz.jaxb.stream;
+
+/**
+ * Filter only testing the attributes of the elements, so that it can be evaluated as soon as the start tag is read.
+ * The elements rejected are then skipped without reading their content, and the elements accepted are unmarshalled
+ * directly from the stream, without being buffered.
+ */
+final class AttributeFilter implements ElementFilter {
+
+    private final ElementFilter filter;
+
+    AttributeFilter(ElementFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public boolean test(BufferedElement element) {
+        return filter.test(element);
+    }
+
+    @Override
+    public ElementFilter and(ElementFilter other) {
+        ElementFilter combined = ElementFilter.super.and(other);
+        return other instanceof AttributeFilter ? new AttributeFilter(combined) : combined;
+    }
+
+}
@@ -0,0 +1,241 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Runner reading many files concurrently, each of them with its own streaming unmarshaller.
+ * <p>
+ * When running on Java 21 or later, each file is processed in its own virtual thread (otherwise a pool of platform
+ * threads is used), with a global limit on the number of files processed at the same time. All the unmarshallers
+ * share the types configuration and the JAXB contexts of the given engine.
+ * <p>
+ * As each unmarshaller is only used by the thread processing its file, they are
+ * {@link UnsynchronizedStreamingUnmarshaller unsynchronized} whatever the configuration of the engine,
+ * so that no lock is held while reading. Note however that on Java 21, a virtual thread still pins its carrier thread
+ * while blocked inside a {@code synchronized} block (for example in a synchronized consumer), and that the page faults
+ * of the memory-mapped files block the carrier thread as well. When the files are not in the page cache, or when
+ * the consumer blocks while holding a monitor, override {@link #createExecutor()} to use a bounded pool of platform
+ * threads instead.
+ * <p>
+ * You can use it with:
+ * <pre>
+ *     BatchUnmarshaller batch = new BatchUnmarshaller(engine, 64);
+ *     BatchUnmarshaller.Result result = batch.process(directory, "*.xml", (file, type, element) -&gt; doSomething(element));
+ * </pre>
+ * Note that the consumer is called concurrently by multiple threads.
+ */
+@Slf4j
+public class BatchUnmarshaller {
+
+    private final StreamingEngine engine;
+    private final int maxConcurrency;
+
+    /**
+     * Creates a new batch runner reading the element types of the given engine.
+     *
+     * @param engine         The engine holding the types configuration
+     * @param maxConcurrency The maximum number of files processed at the same time
+     * @throws IllegalArgumentException if the maximum concurrency is not strictly positive
+     */
+    public BatchUnmarshaller(@NonNull StreamingEngine engine, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Maximum concurrency must be positive, got " + maxConcurrency);
+        }
+        this.engine = engine;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Processes all the files of the given directory matching the given glob pattern.
+     *
+     * @param directory The directory containing the files to process
+     * @param glob      The glob pattern the file names have to match (for example {@code *.xml})
+     * @param consumer  The thread-safe consumer called for each element of each file
+     * @return The result of the processing of each file
+     * @throws IOException if an error was encountered while listing the files of the directory
+     */
+    public Result process(@NonNull Path directory, @NonNull String glob, FileConsumer consumer) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            stream.forEach(files::add);
+        }
+        return process(files, consumer);
+    }
+
+    /**
+     * Processes all the given files.
+     * The failure of one file does not prevent the others to be processed, it is given in its result.
+     *
+     * @param files    The files to process
+     * @param consumer The thread-safe consumer called for each element of each file
+     * @return The result of the processing of each file, in the order of the given files
+     */
+    public Result process(@NonNull Collection<Path> files, @NonNull FileConsumer consumer) {
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<Future<FileResult>> futures = new ArrayList<>();
+        ExecutorService executor = createExecutor();
+        try {
+            for (Path file : files) {
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        return processFile(file, consumer);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            List<FileResult> results = new ArrayList<>();
+            for (Future<FileResult> future : futures) {
+                results.add(future.get());
+            }
+            return new Result(unmodifiableList(results));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StreamingException(e);
+        } catch (ExecutionException e) {
+            throw new StreamingException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private FileResult processFile(Path file, FileConsumer consumer) {
+        long start = System.nanoTime();
+        long[] count = new long[1];
+        try (StreamingUnmarshaller unmarshaller = new UnsynchronizedStreamingUnmarshaller(engine)) {
+            unmarshaller.open(file);
+            unmarshaller.iterate((type, element) -> {
+                consumer.accept(file, type, element);
+                count[0]++;
+            });
+            return new FileResult(file, count[0], Duration.ofNanos(System.nanoTime() - start), null);
+        } catch (Exception e) {
+            log.debug("Unable to process file {}", file, e);
+            return new FileResult(file, count[0], Duration.ofNanos(System.nanoTime() - start), e);
+        }
+    }
+
+    /**
+     * Creates the executor running the files, with one virtual thread per file when available (Java 21 or later),
+     * or with a pool of platform threads otherwise. Override it to always use platform threads, for example with
+     * {@code Executors.newFixedThreadPool(maxConcurrency)}, when the reading blocks the carrier threads (see above).
+     *
+     * @return The executor created
+     */
+    protected ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.debug("Virtual threads not available, using platform threads");
+            return Executors.newFixedThreadPool(maxConcurrency);
+        }
+    }
+
+    /**
+     * Consumer of the elements read from the files.
+     */
+    @FunctionalInterface
+    public interface FileConsumer {
+
+        /**
+         * Consumes the given element.
+         *
+         * @param file    The file from which the element has been read
+         * @param type    The type of the element
+         * @param element The element read
+         */
+        void accept(Path file, Class<?> type, Object element);
+
+    }
+
+    /**
+     * Result of the processing of one file.
+     */
+    @Value
+    public static class FileResult {
+
+        /**
+         * The file processed
+         */
+        Path file;
+
+        /**
+         * The number of elements read from the file (until the error if any)
+         */
+        long elements;
+
+        /**
+         * The time spent to process the file
+         */
+        Duration duration;
+
+        /**
+         * The error encountered while processing the file, or {@code null} if successful
+         */
+        Exception error;
+
+        /**
+         * Indicates if the file has been processed successfully.
+         *
+         * @return {@code true} if there was no error, {@code false} otherwise
+         */
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+    }
+
+    /**
+     * Aggregated result of the processing of all files.
+     */
+    @Value
+    public static class Result {
+
+        /**
+         * The result of each file, in the order of the given files
+         */
+        List<FileResult> files;
+
+        /**
+         * Gets the total number of elements read from all files.
+         *
+         * @return The number of elements
+         */
+        public long getElements() {
+            return files.stream().mapToLong(FileResult::getElements).sum();
+        }
+
+        /**
+         * Gets the results of the files for which an error was encountered.
+         *
+         * @return The list of failed files
+         */
+        public List<FileResult> getFailures() {
+            List<FileResult> failures = new ArrayList<>();
+            for (FileResult file : files) {
+                if (!file.isSuccessful()) {
+                    failures.add(file);
+                }
+            }
+            return failures;
+        }
+
+    }
+
+}
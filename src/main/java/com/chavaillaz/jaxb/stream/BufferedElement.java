@@ -0,0 +1,58 @@
+package com.chavaillaz.jaxb.stream;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Element of a stream buffered before being unmarshalled, giving access to its attributes
+ * and to the text of its direct child elements, to be tested by an {@link ElementFilter}.
+ */
+public class BufferedElement {
+
+    private final Map<String, String> attributes = new HashMap<>();
+    private final Map<String, String> childTexts = new HashMap<>();
+    private final String name;
+
+    BufferedElement(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the local name of the element.
+     *
+     * @return The element name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the value of the given attribute of the element.
+     *
+     * @param name The local name of the attribute
+     * @return The attribute value or {@code null} if the element has no such attribute
+     */
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * Gets the text of the given direct child element.
+     * When the element contains multiple children with this name, the text of the first one is returned.
+     *
+     * @param name The local name of the child element
+     * @return The child element text or {@code null} if the element has no such child
+     */
+    public String getChildText(String name) {
+        return childTexts.get(name);
+    }
+
+    void addAttribute(String name, String value) {
+        attributes.put(name, value);
+    }
+
+    void addChildText(String name, String text) {
+        childTexts.putIfAbsent(name, text);
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.chavaillaz.jaxb.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Mapper of the character offsets given by the parser to byte offsets in a stream encoded in UTF-8,
+ * reading the stream sequentially (the offsets have to be requested in increasing order).
+ */
+class ByteOffsetMapper implements Closeable {
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int position;
+    private int limit;
+    private long bytes;
+    private long chars;
+
+    /**
+     * Creates a new mapper reading the given stream (closed when closing the mapper).
+     *
+     * @param input The stream read by the parser, from its beginning
+     * @throws IOException if an error was encountered while reading the stream
+     */
+    ByteOffsetMapper(InputStream input) throws IOException {
+        this.input = input;
+        // The byte order mark is not counted by the parser
+        if (fill() && limit >= 3 && (buffer[0] & 0xFF) == 0xEF && (buffer[1] & 0xFF) == 0xBB && (buffer[2] & 0xFF) == 0xBF) {
+            position = 3;
+            bytes = 3;
+        }
+    }
+
+    /**
+     * Gets the byte offset of the given character offset.
+     *
+     * @param charOffset The character offset, greater or equal to the previous one requested
+     * @return The corresponding byte offset in the stream
+     * @throws IOException if an error was encountered while reading the stream
+     */
+    long getByteOffset(long charOffset) throws IOException {
+        while (position < limit || fill()) {
+            int value = buffer[position] & 0xFF;
+            if ((value & 0xC0) != 0x80) {
+                if (chars >= charOffset) {
+                    break;
+                }
+                // Characters outside the basic plane are counted as two chars (surrogate pair)
+                chars += (value & 0xF8) == 0xF0 ? 2 : 1;
+            }
+            bytes++;
+            position++;
+        }
+        return bytes;
+    }
+
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = input.readNBytes(buffer, 0, buffer.length);
+        return limit > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+}
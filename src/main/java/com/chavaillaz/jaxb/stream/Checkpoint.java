@@ -0,0 +1,76 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Position of a streaming unmarshaller in a file, from which the reading can be resumed.
+ * It is given by {@link StreamingUnmarshaller#checkpoint()} and used by {@link StreamingUnmarshaller#open(Path, Checkpoint)}.
+ */
+@Value
+public class Checkpoint {
+
+    private static final String OFFSET = "offset";
+    private static final String ORDINAL = "ordinal";
+
+    /**
+     * The byte offset in the file of the next element to read
+     */
+    long offset;
+
+    /**
+     * The number of elements read (or skipped) before the next element
+     */
+    long ordinal;
+
+    /**
+     * Reads a checkpoint previously written with {@link #write(Path)}.
+     *
+     * @param file The file containing the checkpoint
+     * @return The checkpoint read
+     * @throws IOException if an error was encountered while reading the file or if it is not a valid checkpoint
+     */
+    public static Checkpoint read(@NonNull Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        try {
+            return new Checkpoint(
+                    Long.parseLong(properties.getProperty(OFFSET)),
+                    Long.parseLong(properties.getProperty(ORDINAL)));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid checkpoint file " + file, e);
+        }
+    }
+
+    /**
+     * Writes this checkpoint in the given file.
+     * The file is replaced atomically, so that it always contains a complete checkpoint.
+     *
+     * @param file The file in which the checkpoint has to be written
+     * @throws IOException if an error was encountered while writing the file
+     */
+    public void write(@NonNull Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(OFFSET, Long.toString(offset));
+        properties.setProperty(ORDINAL, Long.toString(ordinal));
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary)) {
+            properties.store(writer, null);
+        }
+        Files.move(temporary, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+}
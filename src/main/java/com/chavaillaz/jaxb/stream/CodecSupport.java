@@ -0,0 +1,258 @@
+package com.chavaillaz.jaxb.stream;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static javax.xml.XMLConstants.DEFAULT_NS_PREFIX;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Helpers used by the {@link ElementCodec codecs} to read and write elements,
+ * converting the values the same way as JAXB (following the XML Schema lexical representations).
+ */
+public final class CodecSupport {
+
+    private CodecSupport() {
+    }
+
+    /**
+     * Moves the given reader to the start tag of the next child of the current element,
+     * ignoring the text, comments and processing instructions between the children.
+     *
+     * @param reader The reader positioned on the start tag of the element or on the end tag of one of its children
+     * @return {@code true} if the reader is on the start tag of the next child,
+     * {@code false} if it is on the end tag of the element
+     * @throws XMLStreamException if an error was encountered while reading the element
+     */
+    public static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (true) {
+            int eventType = reader.next();
+            if (eventType == START_ELEMENT) {
+                return true;
+            } else if (eventType == END_ELEMENT) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Skips the current element with all its children.
+     *
+     * @param reader The reader positioned on the start tag of the element, to be left on its end tag
+     * @throws XMLStreamException if an error was encountered while reading the element
+     */
+    public static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int eventType = reader.next();
+            if (eventType == START_ELEMENT) {
+                depth++;
+            } else if (eventType == END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Writes the start tag of an element with the given name, declaring its namespace if any.
+     *
+     * @param writer The writer in which the start tag has to be written
+     * @param name   The tag name of the element
+     * @throws XMLStreamException if an error was encountered while writing the start tag
+     */
+    public static void writeStartElement(XMLStreamWriter writer, QName name) throws XMLStreamException {
+        String namespace = name.getNamespaceURI();
+        if (namespace.isEmpty()) {
+            writer.writeStartElement(name.getLocalPart());
+        } else if (DEFAULT_NS_PREFIX.equals(name.getPrefix())) {
+            writer.writeStartElement(DEFAULT_NS_PREFIX, name.getLocalPart(), namespace);
+            writer.writeDefaultNamespace(namespace);
+        } else {
+            writer.writeStartElement(name.getPrefix(), name.getLocalPart(), namespace);
+            writer.writeNamespace(name.getPrefix(), namespace);
+        }
+    }
+
+    /**
+     * Writes a child element containing only the given text.
+     *
+     * @param writer    The writer in which the element has to be written
+     * @param localName The local name of the element (without namespace)
+     * @param text      The text of the element
+     * @throws XMLStreamException if an error was encountered while writing the element
+     */
+    public static void writeElement(XMLStreamWriter writer, String localName, String text) throws XMLStreamException {
+        writer.writeStartElement(localName);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Converts the given text to a boolean ({@code true} or {@code 1} being true).
+     *
+     * @param text The text to convert
+     * @return The value represented by the text
+     */
+    public static boolean parseBoolean(String text) {
+        String value = text.trim();
+        return "true".equals(value) || "1".equals(value);
+    }
+
+    /**
+     * Converts the given text to a byte.
+     *
+     * @param text The text to convert
+     * @return The value represented by the text
+     * @throws NumberFormatException if the text is not a valid byte
+     */
+    public static byte parseByte(String text) {
+        return Byte.parseByte(text.trim());
+    }
+
+    /**
+     * Converts the given text to a short.
+     *
+     * @param text The text to convert
+     * @return The value represented by the text
+     * @throws NumberFormatException if the text is not a valid short
+     */
+    public static short parseShort(String text) {
+        return Short.parseShort(text.trim());
+    }
+
+    /**
+     * Converts the given text to an integer.
+     *
+     * @param text The text to convert
+     * @return The value represented by the text
+     * @throws NumberFormatException if the text is not a valid integer
+     */
+    public static int parseInt(String text) {
+        return Integer.parseInt(text.trim());
+    }
+
+    /**
+     * Converts the given text to a long.
+     *
+     * @param text The text to convert
+     * @return The value represented by the text
+     * @throws NumberFormatException if the text is not a valid long
+     */
+    public static long parseLong(String text) {
+        return Long.parseLong(text.trim());
+    }
+
+    /**
+     * Converts the given text to a float ({@code INF}, {@code -INF} and {@code NaN} being the special values).
+     *
+     * @param text The text to convert
+     * @return The value represented by the text
+     * @throws NumberFormatException if the text is not a valid float
+     */
+    public static float parseFloat(String text) {
+        String value = text.trim();
+        switch (value) {
+            case "NaN":
+                return Float.NaN;
+            case "INF":
+                return Float.POSITIVE_INFINITY;
+            case "-INF":
+                return Float.NEGATIVE_INFINITY;
+            default:
+                return Float.parseFloat(value);
+        }
+    }
+
+    /**
+     * Converts the given text to a double ({@code INF}, {@code -INF} and {@code NaN} being the special values).
+     *
+     * @param text The text to convert
+     * @return The value represented by the text
+     * @throws NumberFormatException if the text is not a valid double
+     */
+    public static double parseDouble(String text) {
+        String value = text.trim();
+        switch (value) {
+            case "NaN":
+                return Double.NaN;
+            case "INF":
+                return Double.POSITIVE_INFINITY;
+            case "-INF":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                return Double.parseDouble(value);
+        }
+    }
+
+    /**
+     * Converts the given text to a decimal.
+     *
+     * @param text The text to convert
+     * @return The value represented by the text
+     * @throws NumberFormatException if the text is not a valid decimal
+     */
+    public static BigDecimal parseDecimal(String text) {
+        return new BigDecimal(text.trim());
+    }
+
+    /**
+     * Converts the given text to an integer of arbitrary precision.
+     *
+     * @param text The text to convert
+     * @return The value represented by the text
+     * @throws NumberFormatException if the text is not a valid integer
+     */
+    public static BigInteger parseInteger(String text) {
+        return new BigInteger(text.trim());
+    }
+
+    /**
+     * Converts the given float to text.
+     *
+     * @param value The value to convert
+     * @return The text representing the value
+     */
+    public static String printFloat(float value) {
+        if (Float.isNaN(value)) {
+            return "NaN";
+        } else if (value == Float.POSITIVE_INFINITY) {
+            return "INF";
+        } else if (value == Float.NEGATIVE_INFINITY) {
+            return "-INF";
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Converts the given double to text.
+     *
+     * @param value The value to convert
+     * @return The text representing the value
+     */
+    public static String printDouble(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (value == Double.POSITIVE_INFINITY) {
+            return "INF";
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            return "-INF";
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Converts the given decimal to text, without exponent.
+     *
+     * @param value The value to convert
+     * @return The text representing the value
+     */
+    public static String printDecimal(BigDecimal value) {
+        return value.toPlainString();
+    }
+
+}
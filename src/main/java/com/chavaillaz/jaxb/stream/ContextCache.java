@@ -0,0 +1,313 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.StreamingEvents.ContextEvent;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import lombok.Getter;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of JAXB contexts shared by all the streaming marshallers and unmarshallers.
+ * <p>
+ * Creating a {@link JAXBContext} is expensive (it reflects over all the given classes), whereas the instances
+ * created are thread-safe and can be shared. This cache stores the contexts created by set of types, so that
+ * opening many streams with the same types only pays that cost once.
+ * <p>
+ * The cache works as follows:
+ * <ul>
+ *     <li>Contexts are keyed by the set of types (order does not matter) and the context class loader</li>
+ *     <li>A context is created only once, even when requested concurrently by multiple threads</li>
+ *     <li>When the maximum size is exceeded, the least recently used context is evicted</li>
+ *     <li>Contexts related to a class loader can be evicted with {@link #evict(ClassLoader)} (when undeployed)</li>
+ *     <li>Contexts are removed automatically once their types are unloaded, the cache only referencing them weakly</li>
+ * </ul>
+ * As a context references all its types, it is kept alive by a {@link ClassValue} of one of them (the one whose
+ * class loader sees the class loaders of the other types), so that the classes and the context can be unloaded
+ * together when their class loader is no longer used, even without calling {@link #evict(ClassLoader)}.
+ * The maximum size of the default cache can be configured with the system property {@value #MAX_SIZE_PROPERTY}.
+ */
+public class ContextCache {
+
+    public static final String MAX_SIZE_PROPERTY = "com.chavaillaz.jaxb.stream.cache.size";
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private static final ContextCache DEFAULT = new ContextCache(Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+
+    private final Map<Key, Entry> contexts = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final Anchors anchors = new Anchors();
+    private final AtomicLong clock = new AtomicLong();
+    @Getter
+    private final int maxSize;
+
+    /**
+     * Creates a new context cache.
+     *
+     * @param maxSize The maximum number of contexts to keep in the cache
+     * @throws IllegalArgumentException if the given maximum size is not strictly positive
+     */
+    public ContextCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size of the cache must be positive, got " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the cache shared by default by all the streaming marshallers and unmarshallers.
+     *
+     * @return The default cache instance
+     */
+    public static ContextCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the context for the given types, creating it if it is not yet in the cache.
+     *
+     * @param types The types the context has to know
+     * @return The context capable of handling all the given types
+     * @throws JAXBException if an error was encountered while creating the context
+     */
+    public JAXBContext getContext(Class<?>... types) throws JAXBException {
+        expungeCollected();
+        Key key = new Key(Thread.currentThread().getContextClassLoader(), types, collected);
+        Entry entry = contexts.computeIfAbsent(key, Entry::new);
+        entry.lastAccess = clock.incrementAndGet();
+        try {
+            return entry.getContext(types, anchors);
+        } catch (JAXBException e) {
+            // Do not keep failures, so that the next call can try again
+            remove(entry);
+            throw e;
+        } finally {
+            evictOverflow();
+        }
+    }
+
+    /**
+     * Evicts all contexts related to the given class loader,
+     * either as context class loader or as class loader of one of the types.
+     *
+     * @param classLoader The class loader for which contexts have to be removed
+     */
+    public void evict(ClassLoader classLoader) {
+        contexts.values().forEach(entry -> {
+            if (entry.key.isRelatedTo(classLoader)) {
+                remove(entry);
+            }
+        });
+    }
+
+    /**
+     * Evicts all contexts of the cache.
+     */
+    public void clear() {
+        contexts.values().forEach(this::remove);
+    }
+
+    /**
+     * Gets the number of contexts currently in the cache.
+     *
+     * @return The cache size
+     */
+    public int size() {
+        expungeCollected();
+        return contexts.size();
+    }
+
+    private void evictOverflow() {
+        while (contexts.size() > maxSize) {
+            contexts.entrySet().stream()
+                    .min(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                    .ifPresent(entry -> remove(entry.getValue()));
+        }
+    }
+
+    /**
+     * Removes the given entry from the cache, releasing the context kept alive by its anchor type.
+     */
+    private void remove(Entry entry) {
+        if (contexts.remove(entry.key, entry)) {
+            Class<?> anchor = entry.anchor != null ? entry.anchor.get() : null;
+            if (anchor != null) {
+                anchors.get(anchor).remove(entry.key);
+            }
+        }
+    }
+
+    /**
+     * Removes the entries whose class loader or one of the types has been collected.
+     */
+    private void expungeCollected() {
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null) {
+            Entry entry = contexts.get(((KeyReference<?>) reference).key);
+            if (entry != null) {
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Chooses the type keeping the context alive: the one whose class loader sees the class loaders of all
+     * the other types (which cannot be unloaded before it), or the first one for unrelated class loaders.
+     */
+    private static Class<?> anchorOf(Class<?>... types) {
+        for (Class<?> candidate : types) {
+            if (Arrays.stream(types).allMatch(type -> isAncestor(type.getClassLoader(), candidate.getClassLoader()))) {
+                return candidate;
+            }
+        }
+        return types.length > 0 ? types[0] : ContextCache.class;
+    }
+
+    private static boolean isAncestor(ClassLoader ancestor, ClassLoader loader) {
+        for (ClassLoader current = loader; current != null; current = current.getParent()) {
+            if (current == ancestor) {
+                return true;
+            }
+        }
+        return ancestor == null;
+    }
+
+    /**
+     * Contexts kept alive by their anchor type, without preventing it to be unloaded.
+     */
+    private static class Anchors extends ClassValue<Map<Key, JAXBContext>> {
+
+        @Override
+        protected Map<Key, JAXBContext> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+
+    }
+
+    /**
+     * Weak reference to a part of a key, removing the key from the cache once collected.
+     */
+    private static class KeyReference<T> extends WeakReference<T> {
+
+        private final Key key;
+
+        KeyReference(T referent, Key key, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.key = key;
+        }
+
+    }
+
+    /**
+     * Key made of the context class loader and the set of types, only referenced weakly.
+     * A key whose class loader or one of the types has been collected is only equal to itself.
+     */
+    private static class Key {
+
+        private final Reference<ClassLoader> classLoader;
+        private final boolean hasClassLoader;
+        private final List<Reference<Class<?>>> types;
+        private final int hash;
+
+        Key(ClassLoader classLoader, Class<?>[] types, ReferenceQueue<Object> queue) {
+            Set<Class<?>> distinct = new HashSet<>(Arrays.asList(types));
+            this.classLoader = new KeyReference<>(classLoader, this, queue);
+            this.hasClassLoader = classLoader != null;
+            this.types = new ArrayList<>(distinct.size());
+            for (Class<?> type : distinct) {
+                this.types.add(new KeyReference<>(type, this, queue));
+            }
+            this.hash = 31 * System.identityHashCode(classLoader) + distinct.hashCode();
+        }
+
+        boolean isRelatedTo(ClassLoader loader) {
+            if (hasClassLoader && classLoader.get() == loader) {
+                return true;
+            }
+            return types.stream()
+                    .map(Reference::get)
+                    .anyMatch(type -> type != null && type.getClassLoader() == loader);
+        }
+
+        private boolean contains(Class<?> type) {
+            return types.stream().anyMatch(reference -> reference.get() == type);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            if (hash != key.hash || hasClassLoader != key.hasClassLoader || types.size() != key.types.size()) {
+                return false;
+            }
+            ClassLoader loader = classLoader.get();
+            if ((hasClassLoader && loader == null) || loader != key.classLoader.get()) {
+                return false;
+            }
+            for (Reference<Class<?>> reference : types) {
+                Class<?> type = reference.get();
+                if (type == null || !key.contains(type)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    private static class Entry {
+
+        private final Key key;
+        private volatile WeakReference<JAXBContext> context;
+        private volatile WeakReference<Class<?>> anchor;
+        private volatile long lastAccess;
+
+        Entry(Key key) {
+            this.key = key;
+        }
+
+        JAXBContext getContext(Class<?>[] types, Anchors anchors) throws JAXBException {
+            JAXBContext result = context != null ? context.get() : null;
+            if (result == null) {
+                synchronized (this) {
+                    result = context != null ? context.get() : null;
+                    if (result == null) {
+                        ContextEvent event = StreamingEvents.beginContext();
+                        result = JAXBContext.newInstance(types);
+                        if (event != null) {
+                            event.complete(types);
+                        }
+                        Class<?> type = anchorOf(types);
+                        anchors.get(type).put(key, result);
+                        anchor = new WeakReference<>(type);
+                        context = new WeakReference<>(result);
+                    }
+                }
+            }
+            return result;
+        }
+
+    }
+
+}
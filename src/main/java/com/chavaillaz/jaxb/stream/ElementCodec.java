@@ -0,0 +1,47 @@
+package com.chavaillaz.jaxb.stream;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Codec reading and writing the elements of one type directly with StAX, used instead of JAXB for this type.
+ * <p>
+ * Codecs are generated at compile time by {@link com.chavaillaz.jaxb.stream.processor.CodecProcessor}
+ * for the flat JAXB classes, and are then used by the streaming marshallers and unmarshallers
+ * (unless disabled in the {@link StreamingEngine}). Codecs can also be written by hand for the most frequent types,
+ * and set with {@link StreamingMarshaller#setCodec(ElementCodec)} and {@link StreamingUnmarshaller#setCodec(ElementCodec)},
+ * JAXB still handling all the other types.
+ *
+ * @param <T> The type of elements
+ */
+public interface ElementCodec<T> {
+
+    /**
+     * Gets the type of elements handled by this codec.
+     *
+     * @return The element type
+     */
+    Class<T> getType();
+
+    /**
+     * Reads the element on which the given reader is positioned.
+     *
+     * @param reader The reader positioned on the start tag of the element, to be left on its end tag
+     * @return The element read
+     * @throws XMLStreamException if an error was encountered while reading the element
+     */
+    T read(XMLStreamReader reader) throws XMLStreamException;
+
+    /**
+     * Writes the given element (with its start and end tags) to the given writer.
+     *
+     * @param writer  The writer in which the element has to be written
+     * @param name    The tag name of the element
+     * @param element The element to write
+     * @throws XMLStreamException if an error was encountered while writing the element
+     */
+    void write(XMLStreamWriter writer, QName name, T element) throws XMLStreamException;
+
+}
@@ -0,0 +1,66 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.NonNull;
+
+import java.util.function.Predicate;
+
+/**
+ * Filter of the elements of a stream, evaluated on the raw element before unmarshalling it.
+ * The elements rejected by the filter are skipped without being unmarshalled.
+ * <p>
+ * You can use it with:
+ * <pre>
+ *     unmarshaller.addFilter(ProcessorMetric.class, ElementFilter.child("systemLoad", value -&gt; Double.parseDouble(value) &gt; 0.9));
+ * </pre>
+ */
+@FunctionalInterface
+public interface ElementFilter {
+
+    /**
+     * Creates a filter accepting the elements having the given attribute with a value matching the given predicate.
+     * As it only needs the start tag of the elements, the elements rejected are skipped without reading their content.
+     *
+     * @param name      The local name of the attribute
+     * @param predicate The predicate the attribute value has to match
+     * @return The filter created
+     */
+    static ElementFilter attribute(@NonNull String name, @NonNull Predicate<String> predicate) {
+        return new AttributeFilter(element -> {
+            String value = element.getAttribute(name);
+            return value != null && predicate.test(value);
+        });
+    }
+
+    /**
+     * Creates a filter accepting the elements having the given child element with a text matching the given predicate.
+     *
+     * @param name      The local name of the child element
+     * @param predicate The predicate the child element text has to match
+     * @return The filter created
+     */
+    static ElementFilter child(@NonNull String name, @NonNull Predicate<String> predicate) {
+        return element -> {
+            String value = element.getChildText(name);
+            return value != null && predicate.test(value);
+        };
+    }
+
+    /**
+     * Indicates if the given element has to be unmarshalled.
+     *
+     * @param element The buffered element to test
+     * @return {@code true} to unmarshal the element, {@code false} to skip it
+     */
+    boolean test(BufferedElement element);
+
+    /**
+     * Creates a filter accepting the elements accepted by both this filter and the given one.
+     *
+     * @param other The other filter
+     * @return The filter created
+     */
+    default ElementFilter and(@NonNull ElementFilter other) {
+        return element -> test(element) && other.test(element);
+    }
+
+}
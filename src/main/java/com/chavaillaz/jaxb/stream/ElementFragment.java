@@ -0,0 +1,21 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.Value;
+
+/**
+ * Raw XML fragment of one element of a stream, not yet unmarshalled.
+ */
+@Value
+public class ElementFragment {
+
+    /**
+     * The type of the element contained in the fragment
+     */
+    Class<?> type;
+
+    /**
+     * The element content, in XML encoded in UTF-8
+     */
+    byte[] content;
+
+}
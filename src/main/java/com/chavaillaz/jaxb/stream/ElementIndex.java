@@ -0,0 +1,306 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.NonNull;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Index of the elements of an XML file, giving the byte offset, the type and optionally a key of each element.
+ * <p>
+ * The index is built by scanning the file once, and can be written next to it (as a sidecar file) to be
+ * loaded later by an {@link IndexedUnmarshaller}, reading any element directly without parsing the ones before it.
+ * <p>
+ * You can use it with:
+ * <pre>
+ *     ElementIndex.build(engine, file, "id").write(ElementIndex.getSidecar(file));
+ *
+ *     ElementIndex index = ElementIndex.read(ElementIndex.getSidecar(file));
+ *     try (IndexedUnmarshaller unmarshaller = new IndexedUnmarshaller(engine, file, index)) {
+ *         Object element = unmarshaller.get("some-id");
+ *     }
+ * </pre>
+ * Please note that it only supports files with the flat layout written by {@link StreamingMarshaller}
+ * (a root element directly containing the stream of elements), encoded in UTF-8 (or ASCII).
+ */
+public class ElementIndex {
+
+    /**
+     * The extension of the sidecar file holding the index of a file.
+     */
+    public static final String SIDECAR_EXTENSION = ".idx";
+
+    private static final int MAGIC = 0x4A584958;
+    private static final int VERSION = 1;
+
+    private final long fileSize;
+    private final byte[] header;
+    private final byte[] footer;
+    private final List<String> typeNames;
+    private final long[] offsets;
+    private final int[] types;
+    private final String[] keys;
+    private Map<String, Integer> ordinals;
+
+    private ElementIndex(long fileSize, byte[] header, byte[] footer, List<String> typeNames,
+                         long[] offsets, int[] types, String[] keys) {
+        this.fileSize = fileSize;
+        this.header = header;
+        this.footer = footer;
+        this.typeNames = typeNames;
+        this.offsets = offsets;
+        this.types = types;
+        this.keys = keys;
+    }
+
+    /**
+     * Gets the path of the sidecar file holding the index of the given file.
+     *
+     * @param file The indexed file
+     * @return The path of the index file
+     */
+    public static Path getSidecar(@NonNull Path file) {
+        return file.resolveSibling(file.getFileName() + SIDECAR_EXTENSION);
+    }
+
+    /**
+     * Builds the index of the given file, by scanning it once without unmarshalling the elements.
+     *
+     * @param engine     The engine holding the types configuration
+     * @param file       The file to index
+     * @param keyElement The local name of the child element giving the key of each element, or {@code null} for none
+     * @return The index built
+     * @throws IOException        if an error was encountered while reading the file
+     * @throws XMLStreamException if an error was encountered while parsing the file
+     */
+    public static ElementIndex build(@NonNull StreamingEngine engine, @NonNull Path file, String keyElement) throws IOException, XMLStreamException {
+        FileRange range = engine.split(file, 1).get(0);
+        Map<Class<?>, Integer> typeIndexes = new HashMap<>();
+        List<String> typeNames = new ArrayList<>();
+        engine.getTypes().forEach((name, type) -> {
+            typeIndexes.put(type, typeNames.size());
+            typeNames.add(name);
+        });
+
+        long[] offsets = new long[1024];
+        int[] types = new int[1024];
+        List<String> keys = new ArrayList<>();
+        int count = 0;
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller();
+             ByteOffsetMapper mapper = new ByteOffsetMapper(Files.newInputStream(file))) {
+            unmarshaller.open(file);
+            while (unmarshaller.hasNext()) {
+                Class<?> type = unmarshaller.getNextType();
+                if (count + 1 == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    types = Arrays.copyOf(types, types.length * 2);
+                }
+                offsets[count] = mapper.getByteOffset(unmarshaller.getPosition());
+                types[count] = typeIndexes.get(type);
+                if (keyElement != null) {
+                    keys.add(unmarshaller.nextBuffered().getChildText(keyElement));
+                } else {
+                    unmarshaller.skipNext();
+                }
+                count++;
+            }
+        }
+        offsets[count] = range.getEnd();
+
+        return new ElementIndex(Files.size(file), range.getHeader(), range.getFooter(), typeNames,
+                Arrays.copyOf(offsets, count + 1), Arrays.copyOf(types, count),
+                keyElement != null ? keys.toArray(new String[0]) : null);
+    }
+
+    /**
+     * Reads an index previously written with {@link #write(Path)}.
+     *
+     * @param indexFile The index file to read
+     * @return The index read
+     * @throws IOException if an error was encountered while reading the file or if it is not a valid index
+     */
+    public static ElementIndex read(@NonNull Path indexFile) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Invalid or unsupported index file " + indexFile);
+            }
+            long fileSize = input.readLong();
+            byte[] header = new byte[input.readInt()];
+            input.readFully(header);
+            byte[] footer = new byte[input.readInt()];
+            input.readFully(footer);
+            List<String> typeNames = new ArrayList<>();
+            int typeCount = input.readInt();
+            for (int i = 0; i < typeCount; i++) {
+                typeNames.add(input.readUTF());
+            }
+
+            int count = input.readInt();
+            boolean hasKeys = input.readBoolean();
+            long[] offsets = new long[count + 1];
+            int[] types = new int[count];
+            String[] keys = hasKeys ? new String[count] : null;
+            long offset = 0;
+            for (int i = 0; i < count; i++) {
+                offset += readVarLong(input);
+                offsets[i] = offset;
+                types[i] = (int) readVarLong(input);
+                if (hasKeys && input.readBoolean()) {
+                    keys[i] = input.readUTF();
+                }
+            }
+            offsets[count] = offset + readVarLong(input);
+            return new ElementIndex(fileSize, header, footer, typeNames, offsets, types, keys);
+        }
+    }
+
+    /**
+     * Writes this index in the given file, with the offsets encoded as variable-length deltas.
+     *
+     * @param indexFile The index file to write
+     * @throws IOException if an error was encountered while writing the file
+     */
+    public void write(@NonNull Path indexFile) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(fileSize);
+            output.writeInt(header.length);
+            output.write(header);
+            output.writeInt(footer.length);
+            output.write(footer);
+            output.writeInt(typeNames.size());
+            for (String typeName : typeNames) {
+                output.writeUTF(typeName);
+            }
+
+            output.writeInt(types.length);
+            output.writeBoolean(keys != null);
+            long previous = 0;
+            for (int i = 0; i < types.length; i++) {
+                writeVarLong(output, offsets[i] - previous);
+                previous = offsets[i];
+                writeVarLong(output, types[i]);
+                if (keys != null) {
+                    output.writeBoolean(keys[i] != null);
+                    if (keys[i] != null) {
+                        output.writeUTF(keys[i]);
+                    }
+                }
+            }
+            writeVarLong(output, offsets[types.length] - previous);
+        }
+    }
+
+    private static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte current = input.readByte();
+            value |= (long) (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length value in index");
+    }
+
+    /**
+     * Gets the size of the indexed file when the index was built.
+     *
+     * @return The file size in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Gets the number of elements in the index.
+     *
+     * @return The number of elements
+     */
+    public int size() {
+        return types.length;
+    }
+
+    /**
+     * Gets the byte offset of the given element in the file.
+     *
+     * @param ordinal The position of the element in the file (starting at 0)
+     * @return The offset of the start tag of the element
+     * @throws IndexOutOfBoundsException if there is no element at the given position
+     */
+    public long getOffset(int ordinal) {
+        Objects.checkIndex(ordinal, types.length);
+        return offsets[ordinal];
+    }
+
+    /**
+     * Gets the type name of the given element, as registered in the engine.
+     *
+     * @param ordinal The position of the element in the file (starting at 0)
+     * @return The tag name of the element type
+     * @throws IndexOutOfBoundsException if there is no element at the given position
+     */
+    public String getTypeName(int ordinal) {
+        return typeNames.get(types[Objects.checkIndex(ordinal, types.length)]);
+    }
+
+    /**
+     * Gets the key of the given element.
+     *
+     * @param ordinal The position of the element in the file (starting at 0)
+     * @return The key of the element or {@code null} if the index has no keys or if the element has no key
+     * @throws IndexOutOfBoundsException if there is no element at the given position
+     */
+    public String getKey(int ordinal) {
+        Objects.checkIndex(ordinal, types.length);
+        return keys != null ? keys[ordinal] : null;
+    }
+
+    /**
+     * Gets the position of the element having the given key.
+     * When multiple elements have the same key, the position of the first one is returned.
+     *
+     * @param key The key of the element
+     * @return The position of the element or {@code -1} if there is no element with this key
+     */
+    public synchronized int indexOf(@NonNull String key) {
+        if (keys == null) {
+            return -1;
+        }
+        if (ordinals == null) {
+            ordinals = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    ordinals.putIfAbsent(keys[i], i);
+                }
+            }
+        }
+        return ordinals.getOrDefault(key, -1);
+    }
+
+    /**
+     * Gets the range of the given file containing only the given element.
+     *
+     * @param file    The indexed file
+     * @param ordinal The position of the element in the file (starting at 0)
+     * @return The range containing the element, with the root element re-synthesized around it
+     * @throws IndexOutOfBoundsException if there is no element at the given position
+     */
+    public FileRange getRange(@NonNull Path file, int ordinal) {
+        Objects.checkIndex(ordinal, types.length);
+        return new FileRange(file, offsets[ordinal], offsets[ordinal + 1], header, footer);
+    }
+
+}
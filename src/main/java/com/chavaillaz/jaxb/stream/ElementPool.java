@@ -0,0 +1,117 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.NonNull;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Pool of element instances of one type, given back by the consumer of the elements to be repopulated by the
+ * unmarshaller instead of allocating new ones.
+ * <p>
+ * The instances are taken from the pool by the JAXB object factory given to
+ * {@link StreamingUnmarshaller#setObjectFactory(Object)}, which has to declare a public method
+ * {@code createXxx()} returning the element type for each pooled type:
+ * <pre>
+ *     public class MetricFactory {
+ *         public final ElementPool&lt;MemoryMetric&gt; memoryMetrics = new ElementPool&lt;&gt;(MemoryMetric.class, 256);
+ *
+ *         public MemoryMetric createMemoryMetric() {
+ *             return memoryMetrics.acquire();
+ *         }
+ *     }
+ * </pre>
+ * Please note that the unmarshaller only sets the fields present in the XML element (and clears the collections),
+ * so that the fields which can be absent have to be reset when releasing the instances.
+ *
+ * @param <T> The type of elements
+ */
+public class ElementPool<T> {
+
+    private final Deque<T> instances = new ArrayDeque<>();
+    private final Constructor<T> constructor;
+    private final int capacity;
+    private final Consumer<T> reset;
+
+    /**
+     * Creates a new pool of elements of the given type.
+     *
+     * @param type     The type of elements, having a no-argument constructor
+     * @param capacity The maximum number of instances kept in the pool
+     * @throws IllegalArgumentException if the capacity is not strictly positive or if the type has no no-argument constructor
+     */
+    public ElementPool(@NonNull Class<T> type, int capacity) {
+        this(type, capacity, element -> {});
+    }
+
+    /**
+     * Creates a new pool of elements of the given type, resetting them when they are released.
+     *
+     * @param type     The type of elements, having a no-argument constructor
+     * @param capacity The maximum number of instances kept in the pool
+     * @param reset    The action resetting the fields of the elements released
+     * @throws IllegalArgumentException if the capacity is not strictly positive or if the type has no no-argument constructor
+     */
+    public ElementPool(@NonNull Class<T> type, int capacity, @NonNull Consumer<T> reset) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        try {
+            this.constructor = type.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No constructor without arguments in " + type, e);
+        }
+        this.capacity = capacity;
+        this.reset = reset;
+    }
+
+    /**
+     * Takes an instance from the pool, or creates a new one when the pool is empty.
+     *
+     * @return The instance to populate
+     * @throws StreamingException if an error was encountered while creating a new instance
+     */
+    public T acquire() {
+        T element;
+        synchronized (this) {
+            element = instances.pollFirst();
+        }
+        if (element != null) {
+            return element;
+        }
+        try {
+            return constructor.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new StreamingException(e);
+        }
+    }
+
+    /**
+     * Gives back an instance which is no longer used, to be repopulated with the next element read.
+     * The instance is dropped when the pool is full.
+     *
+     * @param element The instance to release, which must not be used after this call
+     */
+    public void release(@NonNull T element) {
+        reset.accept(element);
+        synchronized (this) {
+            if (instances.size() < capacity) {
+                instances.addFirst(element);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of instances currently available in the pool.
+     *
+     * @return The number of instances
+     */
+    public synchronized int size() {
+        return instances.size();
+    }
+
+}
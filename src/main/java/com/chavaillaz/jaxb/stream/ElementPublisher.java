@@ -0,0 +1,189 @@
+package com.chavaillaz.jaxb.stream;
+
+import jakarta.xml.bind.JAXBException;
+
+import javax.xml.stream.XMLStreamException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publisher of the elements of a streaming unmarshaller, reading them only when requested by the subscriber.
+ * <p>
+ * The elements are read and delivered in the given executor, by batches of at most {@value #BATCH_SIZE} elements
+ * before giving back the thread to the executor. Only one subscriber is accepted, as the stream can only be read once.
+ *
+ * @param <T> The element type
+ */
+class ElementPublisher<T> implements Flow.Publisher<T> {
+
+    static final int BATCH_SIZE = 256;
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final StreamingUnmarshaller unmarshaller;
+    private final Class<T> type;
+    private final Executor executor;
+
+    ElementPublisher(StreamingUnmarshaller unmarshaller, Class<T> type, Executor executor) {
+        this.unmarshaller = unmarshaller;
+        this.type = type;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long count) {
+                    // Nothing to deliver
+                }
+
+                @Override
+                public void cancel() {
+                    // Nothing to cancel
+                }
+            });
+            subscriber.onError(new IllegalStateException("The stream can only have one subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new ElementSubscription(subscriber));
+    }
+
+    private class ElementSubscription implements Flow.Subscription, Runnable {
+
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingRuns = new AtomicInteger();
+        private final Flow.Subscriber<? super T> subscriber;
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private boolean terminated;
+
+        ElementSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long count) {
+            if (count <= 0) {
+                invalidRequest = new IllegalArgumentException("Number of requested elements must be positive, got " + count);
+            } else {
+                demand.getAndUpdate(current -> current + count < 0 ? Long.MAX_VALUE : current + count);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        /**
+         * Schedules the delivery of elements in the executor, if not already scheduled.
+         */
+        private void schedule() {
+            if (pendingRuns.getAndIncrement() == 0) {
+                execute();
+            }
+        }
+
+        private void execute() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                terminate();
+                subscriber.onError(e);
+            }
+        }
+
+        /**
+         * Delivers the requested elements, until there is no more demand or the batch size is reached.
+         */
+        @Override
+        public void run() {
+            if (terminated) {
+                return;
+            }
+
+            int missed = 1;
+            int delivered = 0;
+            while (true) {
+                long requested = demand.get();
+                long emitted = 0;
+                while (emitted != requested) {
+                    if (isStopped()) {
+                        return;
+                    }
+                    if (delivered == BATCH_SIZE) {
+                        // Let the other tasks of the executor run, and continue later
+                        consume(emitted);
+                        execute();
+                        return;
+                    }
+
+                    T element;
+                    try {
+                        element = unmarshaller.readNext(type);
+                    } catch (JAXBException | XMLStreamException | RuntimeException e) {
+                        terminate();
+                        subscriber.onError(e);
+                        return;
+                    }
+                    if (element == null) {
+                        terminate();
+                        subscriber.onComplete();
+                        return;
+                    }
+
+                    try {
+                        subscriber.onNext(element);
+                    } catch (RuntimeException e) {
+                        // Subscriber failure is considered as a cancellation
+                        terminate();
+                        return;
+                    }
+                    emitted++;
+                    delivered++;
+                }
+                if (isStopped()) {
+                    return;
+                }
+
+                consume(emitted);
+                missed = pendingRuns.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private boolean isStopped() {
+            if (cancelled) {
+                terminate();
+                return true;
+            }
+            if (invalidRequest != null) {
+                terminate();
+                subscriber.onError(invalidRequest);
+                return true;
+            }
+            return false;
+        }
+
+        private void consume(long emitted) {
+            demand.getAndUpdate(current -> current == Long.MAX_VALUE ? current : current - emitted);
+        }
+
+        private void terminate() {
+            terminated = true;
+            cancelled = true;
+            unmarshaller.close();
+        }
+
+    }
+
+}
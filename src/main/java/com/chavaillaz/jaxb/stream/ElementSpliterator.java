@@ -0,0 +1,100 @@
+package com.chavaillaz.jaxb.stream;
+
+import jakarta.xml.bind.JAXBException;
+
+import javax.xml.stream.XMLStreamException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator reading the elements of a streaming unmarshaller.
+ * <p>
+ * Elements are read one by one when traversed sequentially. When split (for parallel streams), a batch of elements
+ * is read from the unmarshaller and handed over as a new spliterator, with batches growing at each split.
+ * The size is estimated from the input length and the average size in bytes of the elements already read,
+ * and is unknown when the input length is unknown (for input streams not opened from a file).
+ *
+ * @param <T> The element type
+ */
+class ElementSpliterator<T> implements Spliterator<T> {
+
+    static final int BATCH_UNIT = 1 << 10;
+    static final int MAX_BATCH = 1 << 25;
+
+    private final StreamingUnmarshaller unmarshaller;
+    private final Class<T> type;
+    private final long startPosition;
+    private long count;
+    private int batch;
+
+    ElementSpliterator(StreamingUnmarshaller unmarshaller, Class<T> type) {
+        this.unmarshaller = unmarshaller;
+        this.type = type;
+        this.startPosition = unmarshaller.getBytesRead();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        T element = readNext();
+        if (element == null) {
+            return false;
+        }
+        action.accept(element);
+        return true;
+    }
+
+    /**
+     * Reads the next element of the expected type, skipping the others.
+     *
+     * @return The element read or {@code null} if the end of the stream has been reached
+     */
+    private T readNext() {
+        try {
+            T element = unmarshaller.readNext(type);
+            if (element != null) {
+                count++;
+            }
+            return element;
+        } catch (XMLStreamException | JAXBException e) {
+            throw new StreamingException(e);
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int size = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+        Object[] elements = new Object[size];
+        int read = 0;
+        T element;
+        while (read < size && (element = readNext()) != null) {
+            elements[read++] = element;
+        }
+        if (read == 0) {
+            return null;
+        }
+        batch = read;
+        return Spliterators.spliterator(elements, 0, read, ORDERED | NONNULL);
+    }
+
+    @Override
+    public long estimateSize() {
+        long length = unmarshaller.getInputLength();
+        long position = unmarshaller.getBytesRead();
+        if (length <= 0 || position < 0) {
+            return Long.MAX_VALUE;
+        }
+        if (count == 0 || position <= startPosition) {
+            // Nothing read yet, the length is an upper bound
+            return length;
+        }
+        double averageSize = (double) (position - startPosition) / count;
+        return Math.max(0, (long) ((length - position) / averageSize));
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.Value;
+
+import java.nio.file.Path;
+
+/**
+ * Range of bytes of an XML file, containing a sequence of whole elements of the stream.
+ * <p>
+ * Each range can be read independently with {@link StreamingUnmarshaller#open(FileRange)}, the container
+ * of the elements being re-synthesized around the range with the start tag of the root element of the file
+ * (to keep its namespace declarations) and the corresponding end tag.
+ */
+@Value
+public class FileRange {
+
+    /**
+     * The file containing the range
+     */
+    Path file;
+
+    /**
+     * The offset of the first byte of the range (inclusive)
+     */
+    long start;
+
+    /**
+     * The offset of the last byte of the range (exclusive)
+     */
+    long end;
+
+    /**
+     * The start tag of the root element, to insert before the range
+     */
+    byte[] header;
+
+    /**
+     * The end tag of the root element, to insert after the range
+     */
+    byte[] footer;
+
+    /**
+     * Gets the number of bytes in the range.
+     *
+     * @return The range length
+     */
+    public long getLength() {
+        return end - start;
+    }
+
+}
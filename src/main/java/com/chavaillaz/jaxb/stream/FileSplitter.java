@@ -0,0 +1,339 @@
+package com.chavaillaz.jaxb.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Splitter of an XML file into ranges of bytes, each containing a sequence of whole elements of the stream.
+ * <p>
+ * The file is cut at regular offsets, and each offset is then re-aligned (forward) to the next start tag
+ * of one of the given element names. To avoid aligning on a nested element having the same name, a start tag
+ * is only accepted when it follows the root start tag, an empty element or the end tag of a known element.
+ * <p>
+ * The header given to each range is made of the XML declaration of the file (if any), so that the encoding
+ * it declares is kept, and of the root start tag. The comments, processing instructions and document type
+ * declaration before the root element are skipped.
+ * <p>
+ * Please note that it only supports files with the flat layout written by {@link StreamingMarshaller}
+ * (a root element directly containing the stream of elements), encoded in UTF-8 (or any ASCII-compatible encoding).
+ */
+class FileSplitter {
+
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final int MAX_TAG_LENGTH = 1024;
+    private static final byte[] DECLARATION_START = "<?xml".getBytes(UTF_8);
+    private static final byte[] COMMENT_START = "<!--".getBytes(UTF_8);
+    private static final byte[] COMMENT_END = "-->".getBytes(UTF_8);
+    private static final byte[] INSTRUCTION_END = "?>".getBytes(UTF_8);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Set<String> names;
+    private final long size;
+    private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    private long windowStart = -1;
+    private long declarationEnd;
+    private long rootEnd;
+
+    private FileSplitter(Path file, FileChannel channel, Set<String> names) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.names = names;
+        this.size = channel.size();
+    }
+
+    /**
+     * Splits the given file into ranges.
+     *
+     * @param file  The file to split
+     * @param count The number of ranges wanted (less ranges are returned if elements are too big)
+     * @param names The local names of the elements of the stream
+     * @return The list of ranges, in the order of the file
+     * @throws IOException if an error was encountered while reading the file or if it has no root element
+     */
+    static List<FileRange> split(Path file, int count, Set<String> names) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            return new FileSplitter(file, channel, names).split(count);
+        }
+    }
+
+    private List<FileRange> split(int count) throws IOException {
+        long rootStart = findRootStart();
+        String rootName = readName(rootStart);
+        rootEnd = findTagEnd(rootStart);
+        byte[] footer = ("</" + rootName + ">").getBytes(UTF_8);
+        if (byteAt(rootEnd - 2) == '/') {
+            // Empty root element, re-synthesized with a start and an end tag around an empty range
+            byte[] header = concat(read(0, declarationEnd), read(rootStart, rootEnd - 2), new byte[]{'>'});
+            return List.of(new FileRange(file, rootEnd, rootEnd, header, footer));
+        }
+
+        byte[] header = concat(read(0, declarationEnd), read(rootStart, rootEnd));
+        long last = findLastTagStart(footer);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(rootEnd);
+        for (int i = 1; i < count; i++) {
+            long previous = bounds.get(bounds.size() - 1);
+            long offset = Math.max(rootEnd + (last - rootEnd) * i / count, previous + 1);
+            long aligned = align(offset, last);
+            if (aligned < 0) {
+                break;
+            }
+            bounds.add(aligned);
+        }
+        bounds.add(last);
+
+        List<FileRange> ranges = new ArrayList<>();
+        for (int i = 0; i < bounds.size() - 1; i++) {
+            ranges.add(new FileRange(file, bounds.get(i), bounds.get(i + 1), header, footer));
+        }
+        return ranges;
+    }
+
+    /**
+     * Finds the start tag of the root element, skipping the XML declaration (whose end is kept),
+     * the comments, the processing instructions and the document type declaration.
+     */
+    private long findRootStart() throws IOException {
+        long position = 0;
+        while (position < size) {
+            if (byteAt(position) != '<') {
+                position++;
+            } else if (startsWith(position, COMMENT_START)) {
+                position = find(position + COMMENT_START.length, COMMENT_END) + COMMENT_END.length;
+            } else if (byteAt(position + 1) == '?') {
+                boolean declaration = startsWith(position, DECLARATION_START)
+                        && isWhitespace(byteAt(position + DECLARATION_START.length));
+                position = find(position + 2, INSTRUCTION_END) + INSTRUCTION_END.length;
+                if (declaration) {
+                    declarationEnd = position;
+                }
+            } else if (byteAt(position + 1) == '!') {
+                position = findDoctypeEnd(position);
+            } else {
+                return position;
+            }
+        }
+        throw new IOException("No root element found in " + file);
+    }
+
+    /**
+     * Finds the end of the document type declaration starting at the given offset,
+     * ignoring the quoted values, the comments and the markup of its internal subset.
+     *
+     * @return The offset following the end of the declaration
+     */
+    private long findDoctypeEnd(long position) throws IOException {
+        byte quote = 0;
+        int brackets = 0;
+        for (long current = position + 2; current < size; current++) {
+            byte value = byteAt(current);
+            if (quote != 0) {
+                if (value == quote) {
+                    quote = 0;
+                }
+            } else if (value == '"' || value == '\'') {
+                quote = value;
+            } else if (startsWith(current, COMMENT_START)) {
+                current = find(current + COMMENT_START.length, COMMENT_END) + COMMENT_END.length - 1;
+            } else if (value == '[') {
+                brackets++;
+            } else if (value == ']') {
+                brackets--;
+            } else if (value == '>' && brackets == 0) {
+                return current + 1;
+            }
+        }
+        throw new IOException("Unterminated declaration at offset " + position + " in " + file);
+    }
+
+    /**
+     * Finds the given sequence of bytes from the given offset.
+     *
+     * @return The offset of the sequence
+     */
+    private long find(long position, byte[] sequence) throws IOException {
+        for (long current = position; current <= size - sequence.length; current++) {
+            if (startsWith(current, sequence)) {
+                return current;
+            }
+        }
+        throw new IOException("Unterminated markup at offset " + position + " in " + file);
+    }
+
+    private boolean startsWith(long position, byte[] sequence) throws IOException {
+        for (int i = 0; i < sequence.length; i++) {
+            if (byteAt(position + i) != sequence[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the end of the tag starting at the given offset, ignoring the quoted attribute values.
+     *
+     * @return The offset following the end of the tag
+     */
+    private long findTagEnd(long position) throws IOException {
+        byte quote = 0;
+        for (long current = position; current < size; current++) {
+            byte value = byteAt(current);
+            if (quote != 0) {
+                if (value == quote) {
+                    quote = 0;
+                }
+            } else if (value == '"' || value == '\'') {
+                quote = value;
+            } else if (value == '>') {
+                return current + 1;
+            }
+        }
+        throw new IOException("Unterminated tag at offset " + position + " in " + file);
+    }
+
+    /**
+     * Finds the end tag of the root element, only followed by whitespaces, comments and processing instructions.
+     */
+    private long findLastTagStart(byte[] footer) throws IOException {
+        byte[] prefix = Arrays.copyOf(footer, footer.length - 1);
+        for (long position = size - prefix.length; position >= rootEnd; position--) {
+            if (startsWith(position, prefix)) {
+                byte next = byteAt(position + prefix.length);
+                if ((next == '>' || isWhitespace(next)) && isEpilog(findTagEnd(position))) {
+                    return position;
+                }
+            }
+        }
+        throw new IOException("No end tag found for the root element in " + file);
+    }
+
+    /**
+     * Indicates if the file from the given offset is only made of whitespaces, comments and processing instructions.
+     */
+    private boolean isEpilog(long position) throws IOException {
+        long current = position;
+        while (current < size) {
+            if (isWhitespace(byteAt(current))) {
+                current++;
+            } else if (startsWith(current, COMMENT_START)) {
+                current = find(current + COMMENT_START.length, COMMENT_END) + COMMENT_END.length;
+            } else if (byteAt(current) == '<' && byteAt(current + 1) == '?') {
+                current = find(current + 2, INSTRUCTION_END) + INSTRUCTION_END.length;
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Aligns the given offset to the next start tag of an element of the stream.
+     *
+     * @return The offset of the start tag or {@code -1} if there is none before the given limit
+     */
+    private long align(long offset, long limit) throws IOException {
+        for (long position = offset; position < limit; position++) {
+            if (byteAt(position) == '<'
+                    && names.contains(localName(readName(position)))
+                    && followsSibling(position)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Indicates if the tag at the given offset follows the root start tag, an empty element or
+     * the end tag of a known element (only separated by whitespaces).
+     */
+    private boolean followsSibling(long position) throws IOException {
+        long current = position - 1;
+        while (current >= rootEnd && isWhitespace(byteAt(current))) {
+            current--;
+        }
+        if (current == rootEnd - 1) {
+            return true;
+        }
+        if (byteAt(current) != '>') {
+            return false;
+        }
+        if (byteAt(current - 1) == '/') {
+            return true;
+        }
+        for (long start = current - 1; start >= Math.max(rootEnd, current - MAX_TAG_LENGTH); start--) {
+            if (byteAt(start) == '<') {
+                return byteAt(start + 1) == '/' && names.contains(localName(readName(start + 1)));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the name of the tag starting at the given offset (on its first character {@code <}).
+     */
+    private String readName(long position) throws IOException {
+        long start = position + 1;
+        long end = start;
+        while (end < size && end - start < MAX_TAG_LENGTH) {
+            byte value = byteAt(end);
+            if (isWhitespace(value) || value == '>' || value == '/') {
+                break;
+            }
+            end++;
+        }
+        return new String(read(start, end), UTF_8);
+    }
+
+    private static String localName(String name) {
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    private static boolean isWhitespace(byte value) {
+        return value == ' ' || value == '\t' || value == '\r' || value == '\n';
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            output.writeBytes(part);
+        }
+        return output.toByteArray();
+    }
+
+    private byte[] read(long start, long end) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = byteAt(start + i);
+        }
+        return bytes;
+    }
+
+    private byte byteAt(long position) throws IOException {
+        if (position < 0 || position >= size) {
+            return 0;
+        }
+        if (windowStart < 0 || position < windowStart || position >= windowStart + window.limit()) {
+            // Center the window, so that scanning backward does not reload it at each byte
+            windowStart = Math.max(0, position - WINDOW_SIZE / 2);
+            window.clear();
+            while (window.hasRemaining() && channel.read(window, windowStart + window.position()) > 0) {
+                // Fill the whole window
+            }
+            window.flip();
+        }
+        return window.get((int) (position - windowStart));
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * Input stream decompressing a gzip file in background threads, ahead of the thread reading it.
+ * <p>
+ * A read-ahead thread reads the file and decompresses it by chunks, stored in a bounded queue until read.
+ * When the file is made of independent blocks whose size is given in their header (BGZF, as written by
+ * {@code bgzip}), the blocks are instead decompressed in parallel by a pool of worker threads, and delivered
+ * in the order of the file. Other files (including files with multiple gzip members) are decompressed sequentially.
+ * <p>
+ * The worker threads (one per processor at most, stopped when idle) and their inflaters are shared by all
+ * the streams, so that opening many compressed files does not multiply the threads and the native memory used.
+ */
+@Slf4j
+class GzipReadAheadInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CAPACITY = 64;
+    private static final int HEADER_SIZE = 18;
+    private static final int FLAG_EXTRA = 4;
+    private static final byte[] END = new byte[0];
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService WORKERS = createWorkers();
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(THREADS);
+
+    private final BlockingQueue<Future<byte[]>> chunks = new ArrayBlockingQueue<>(CAPACITY);
+    private final FileChannel channel;
+    private final boolean parallel;
+    private final Thread reader;
+    private byte[] current = END;
+    private int position;
+    private boolean finished;
+
+    /**
+     * Creates a new stream decompressing the given gzip file.
+     *
+     * @param channel The channel of the gzip file to read (closed when closing the stream)
+     * @throws IOException if an error was encountered while reading the beginning of the file
+     */
+    GzipReadAheadInputStream(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.parallel = getBlockSize(channel, 0) > 0;
+        this.reader = new Thread(this::readAhead, "jaxb-stream-read-ahead");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    private static ExecutorService createWorkers() {
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "jaxb-stream-inflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers.allowCoreThreadTimeOut(true);
+        return workers;
+    }
+
+    /**
+     * Indicates if the given file is compressed with gzip.
+     *
+     * @param channel The channel of the file
+     * @return {@code true} if the file starts with the gzip magic number, {@code false} otherwise
+     * @throws IOException if an error was encountered while reading the beginning of the file
+     */
+    static boolean isGzip(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        while (magic.hasRemaining() && channel.read(magic, magic.position()) > 0) {
+            // Read the magic number
+        }
+        return magic.position() == 2 && (magic.get(0) & 0xFF) == 0x1F && (magic.get(1) & 0xFF) == 0x8B;
+    }
+
+    /**
+     * Gets the size of the BGZF block starting at the given offset.
+     *
+     * @return The size of the whole block (with its header and trailer), or {@code -1} if it is not a BGZF block
+     */
+    private static int getBlockSize(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header, offset + header.position()) > 0) {
+            // Read the whole header
+        }
+        if (header.position() < HEADER_SIZE
+                || (header.get(0) & 0xFF) != 0x1F || (header.get(1) & 0xFF) != 0x8B || header.get(2) != 8
+                || (header.get(3) & FLAG_EXTRA) == 0
+                || header.getShort(10) != 6 || header.get(12) != 'B' || header.get(13) != 'C' || header.getShort(14) != 2) {
+            return -1;
+        }
+        return (header.getShort(16) & 0xFFFF) + 1;
+    }
+
+    /**
+     * Reads the file ahead, decompressing the BGZF blocks in parallel as long as they are found,
+     * and the rest of the file sequentially.
+     */
+    private void readAhead() {
+        try {
+            long offset = 0;
+            long size = channel.size();
+            int blockSize;
+            while (parallel && offset < size && (blockSize = getBlockSize(channel, offset)) > 0) {
+                ByteBuffer block = ByteBuffer.allocate(blockSize);
+                while (block.hasRemaining() && channel.read(block, offset + block.position()) > 0) {
+                    // Read the whole block
+                }
+                chunks.put(WORKERS.submit(() -> inflate(block.array())));
+                offset += blockSize;
+            }
+
+            if (offset < size) {
+                // Closing the stream ends its inflater (and closes the channel, no longer needed)
+                InputStream compressed = Channels.newInputStream(channel.position(offset));
+                try (InputStream input = new GZIPInputStream(compressed, CHUNK_SIZE)) {
+                    byte[] chunk;
+                    while ((chunk = input.readNBytes(CHUNK_SIZE)).length > 0) {
+                        chunks.put(CompletableFuture.completedFuture(chunk));
+                    }
+                }
+            }
+            chunks.put(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.debug("Unable to decompress the file", e);
+            try {
+                chunks.put(CompletableFuture.failedFuture(e));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Decompresses the given BGZF block, checking its size and checksum.
+     */
+    private static byte[] inflate(byte[] block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(block).order(LITTLE_ENDIAN);
+        int headerSize = 12 + (buffer.getShort(10) & 0xFFFF);
+        int expectedCrc = buffer.getInt(block.length - 8);
+        byte[] content = new byte[buffer.getInt(block.length - 4)];
+
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        inflater.setInput(block, headerSize, block.length - headerSize - 8);
+        try {
+            int length = 0;
+            while (length < content.length && !inflater.finished()) {
+                int inflated = inflater.inflate(content, length, content.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != content.length) {
+                throw new IOException("Truncated gzip block");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid gzip block", e);
+        } finally {
+            release(inflater);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Corrupted gzip block (checksum mismatch)");
+        }
+        return content;
+    }
+
+    /**
+     * Gives the given inflater back to the pool, or ends it if the pool is full.
+     */
+    private static void release(Inflater inflater) {
+        inflater.reset();
+        if (!INFLATERS.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Takes the next decompressed chunks until one has bytes to read.
+     *
+     * @return {@code true} if there are bytes to read, {@code false} if the end of the file has been reached
+     */
+    private boolean fill() throws IOException {
+        while (position == current.length) {
+            if (finished) {
+                return false;
+            }
+            try {
+                current = chunks.take().get();
+                position = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for decompressed data", e);
+            } catch (ExecutionException e) {
+                finished = true;
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            if (current == END) {
+                finished = true;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        reader.interrupt();
+        // Do not decompress the blocks submitted to the shared workers but not yet read
+        Future<byte[]> chunk;
+        while ((chunk = chunks.poll()) != null) {
+            chunk.cancel(false);
+        }
+        channel.close();
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.chavaillaz.jaxb.stream;
+
+import jakarta.xml.bind.JAXBException;
+import lombok.NonNull;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Unmarshaller reading any element of a file directly, using the byte offsets of its {@link ElementIndex}.
+ * Only the requested element is parsed, with the root element of the file re-synthesized around it.
+ * <p>
+ * You can use it with:
+ * <pre>
+ *     try (IndexedUnmarshaller unmarshaller = new IndexedUnmarshaller(engine, file, index)) {
+ *         Object first = unmarshaller.get(0);
+ *         Object element = unmarshaller.get("some-id");
+ *     }
+ * </pre>
+ */
+public class IndexedUnmarshaller implements Closeable {
+
+    private final StreamingUnmarshaller unmarshaller;
+    private final Path file;
+    private final ElementIndex index;
+
+    /**
+     * Creates a new indexed unmarshaller reading the elements of the given file.
+     *
+     * @param engine The engine holding the types configuration
+     * @param file   The file to read
+     * @param index  The index of the file
+     * @throws IOException if an error was encountered while reading the file size or if the index does not match it
+     */
+    public IndexedUnmarshaller(@NonNull StreamingEngine engine, @NonNull Path file, @NonNull ElementIndex index) throws IOException {
+        if (Files.size(file) != index.getFileSize()) {
+            throw new IOException("The index does not match the size of the file " + file);
+        }
+        this.unmarshaller = engine.newUnmarshaller();
+        this.file = file;
+        this.index = index;
+    }
+
+    /**
+     * Gets the number of elements in the file.
+     *
+     * @return The number of elements
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Reads the element at the given position in the file.
+     *
+     * @param ordinal The position of the element in the file (starting at 0)
+     * @return The element read
+     * @throws IndexOutOfBoundsException if there is no element at the given position
+     * @throws IOException               if an error was encountered while opening the file
+     * @throws XMLStreamException        if an error was encountered while parsing the element
+     * @throws JAXBException             if an error was encountered while unmarshalling the element
+     */
+    public synchronized Object get(int ordinal) throws IOException, XMLStreamException, JAXBException {
+        unmarshaller.open(index.getRange(file, ordinal));
+        return unmarshaller.next();
+    }
+
+    /**
+     * Reads the element having the given key.
+     *
+     * @param key The key of the element
+     * @return The element read or {@code null} if there is no element with this key
+     * @throws IOException        if an error was encountered while opening the file
+     * @throws XMLStreamException if an error was encountered while parsing the element
+     * @throws JAXBException      if an error was encountered while unmarshalling the element
+     */
+    public Object get(@NonNull String key) throws IOException, XMLStreamException, JAXBException {
+        int ordinal = index.indexOf(key);
+        return ordinal < 0 ? null : get(ordinal);
+    }
+
+    @Override
+    public synchronized void close() {
+        unmarshaller.close();
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+/**
+ * Input stream reading a range of bytes of a file channel, through memory-mapped windows.
+ * <p>
+ * Only one window is mapped at a time. When all its bytes have been read, the window is released
+ * (unmapped immediately when the JVM allows it, or left to the garbage collector otherwise)
+ * before mapping the next one, so that the pages already parsed do not stay mapped.
+ */
+@Slf4j
+class MappedInputStream extends InputStream {
+
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Unable to unmap buffers explicitly, they will be released by the garbage collector", e);
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final FileChannel channel;
+    private final boolean closeChannel;
+    private final long end;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long position;
+
+    /**
+     * Creates a new input stream reading the given range of the channel.
+     *
+     * @param channel      The channel to read
+     * @param start        The offset of the first byte to read (inclusive)
+     * @param end          The offset of the last byte to read (exclusive)
+     * @param closeChannel {@code true} to close the channel when closing the stream, {@code false} otherwise
+     */
+    MappedInputStream(FileChannel channel, long start, long end, boolean closeChannel) {
+        this(channel, start, end, closeChannel, WINDOW_SIZE);
+    }
+
+    MappedInputStream(FileChannel channel, long start, long end, boolean closeChannel, int windowSize) {
+        this.channel = channel;
+        this.position = start;
+        this.end = end;
+        this.closeChannel = closeChannel;
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextWindow()) {
+            return -1;
+        }
+        return window.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextWindow()) {
+            return -1;
+        }
+        int count = Math.min(length, window.remaining());
+        window.get(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count && nextWindow()) {
+            int step = (int) Math.min(count - skipped, window.remaining());
+            window.position(window.position() + step);
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        long remaining = end - position + (window == null ? 0 : window.remaining());
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    /**
+     * Ensures that the current window has bytes to read, mapping the next one if necessary.
+     *
+     * @return {@code true} if there are bytes to read, {@code false} if the end of the range has been reached
+     */
+    private boolean nextWindow() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        release();
+        if (position >= end) {
+            return false;
+        }
+        long size = Math.min(windowSize, end - position);
+        window = channel.map(READ_ONLY, position, size);
+        position += size;
+        return true;
+    }
+
+    private void release() {
+        if (window != null && INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, window);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.debug("Unable to unmap buffer", e);
+            }
+        }
+        window = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Not unmapped explicitly, in case of a concurrent read
+        window = null;
+        position = end;
+        if (closeChannel) {
+            channel.close();
+        }
+    }
+
+}
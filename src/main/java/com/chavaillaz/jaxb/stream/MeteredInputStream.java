@@ -0,0 +1,65 @@
+package com.chavaillaz.jaxb.stream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream counting the bytes read from the underlying stream, and recording them in the given metrics.
+ * Closing it does not close the underlying stream, which stays owned by the unmarshaller.
+ */
+class MeteredInputStream extends FilterInputStream {
+
+    private final StreamingMetrics metrics;
+    private volatile long count;
+
+    MeteredInputStream(InputStream inputStream, StreamingMetrics metrics) {
+        super(inputStream);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            count++;
+            metrics.recordBytesRead(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            count += read;
+            metrics.recordBytesRead(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long length) throws IOException {
+        long skipped = super.skip(length);
+        if (skipped > 0) {
+            count += skipped;
+            metrics.recordBytesRead(skipped);
+        }
+        return skipped;
+    }
+
+    /**
+     * Gets the number of bytes read so far, from any thread.
+     *
+     * @return The number of bytes read
+     */
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() {
+        // The underlying stream is closed by its owner
+    }
+
+}
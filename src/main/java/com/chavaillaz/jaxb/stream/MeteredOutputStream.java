@@ -0,0 +1,43 @@
+package com.chavaillaz.jaxb.stream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream counting the bytes written to the underlying stream, and recording them in the given metrics.
+ */
+class MeteredOutputStream extends FilterOutputStream {
+
+    private final StreamingMetrics metrics;
+    private volatile long count;
+
+    MeteredOutputStream(OutputStream outputStream, StreamingMetrics metrics) {
+        super(outputStream);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        out.write(value);
+        count++;
+        metrics.recordBytesWritten(1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        out.write(buffer, offset, length);
+        count += length;
+        metrics.recordBytesWritten(length);
+    }
+
+    /**
+     * Gets the number of bytes written so far, from any thread.
+     *
+     * @return The number of bytes written
+     */
+    long getCount() {
+        return count;
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.chavaillaz.jaxb.stream;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Lock doing nothing, used by the marshallers and unmarshallers meant to be used by a single thread,
+ * so that they share the code of the synchronized ones without paying any lock acquisition.
+ */
+final class NoLock implements Lock {
+
+    static final NoLock INSTANCE = new NoLock();
+
+    private NoLock() {
+    }
+
+    @Override
+    public void lock() {
+        // Nothing to lock
+    }
+
+    @Override
+    public void lockInterruptibly() {
+        // Nothing to lock
+    }
+
+    @Override
+    public boolean tryLock() {
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) {
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+        // Nothing to unlock
+    }
+
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException("Conditions are not supported without lock");
+    }
+
+}
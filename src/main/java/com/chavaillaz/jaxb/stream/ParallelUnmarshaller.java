@@ -0,0 +1,270 @@
+package com.chavaillaz.jaxb.stream;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import lombok.NonNull;
+import lombok.Value;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * JAXB unmarshaller using streaming to read XML from the given input stream, unmarshalling elements in parallel.
+ * <p>
+ * When reading large files, the binding of the elements is usually the bottleneck, not the input/output.
+ * This unmarshaller splits the work between multiple threads, to use all the available processors.
+ * <p>
+ * This unmarshaller works the following way:
+ * <ul>
+ *     <li>A reader thread records the parsing events of each element (without unmarshalling them)</li>
+ *     <li>A pool of worker threads unmarshals the recorded elements, using pooled unmarshallers</li>
+ *     <li>The elements are delivered either in the document order, or as soon as they are unmarshalled</li>
+ * </ul>
+ * The number of elements read but not yet consumed is bounded by the given capacity, so that the reader thread
+ * waits for the consumer when it is too slow (instead of loading the whole file into memory).
+ * <p>
+ * You can use it with:
+ * <pre>
+ *     try (ParallelUnmarshaller unmarshaller = new ParallelUnmarshaller(engine, 8, 1000, true)) {
+ *         unmarshaller.open(inputStream);
+ *         unmarshaller.iterate((type, element) -&gt; doSomething(element));
+ *     }
+ * </pre>
+ */
+public class ParallelUnmarshaller implements Closeable {
+
+    private static final Future<Element> END = CompletableFuture.completedFuture(null);
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final Map<Class<?>, Queue<Unmarshaller>> unmarshallerPool = new ConcurrentHashMap<>();
+    private final StreamingEngine engine;
+    private final ExecutorService workers;
+    private final int capacity;
+    private final boolean ordered;
+    private BlockingQueue<Future<Element>> results;
+    private Semaphore pending;
+    private Thread reader;
+
+    /**
+     * Creates a new parallel unmarshaller reading the element types of the given engine.
+     *
+     * @param engine   The engine holding the types configuration
+     * @param threads  The number of worker threads unmarshalling the elements
+     * @param capacity The maximum number of elements read but not yet consumed
+     * @param ordered  {@code true} to deliver elements in the document order,
+     *                 {@code false} to deliver them as soon as they are unmarshalled
+     * @throws IllegalArgumentException if the number of threads or the capacity is not strictly positive
+     */
+    public ParallelUnmarshaller(@NonNull StreamingEngine engine, int threads, int capacity, boolean ordered) {
+        if (threads <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Number of threads and capacity must be positive");
+        }
+        this.engine = engine;
+        this.capacity = capacity;
+        this.ordered = ordered;
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "jaxb-stream-worker-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the given input stream in which the XML file has to be read and starts reading it.
+     * It skips the beginning of the document with XML definition and the root element (container tag).
+     * If an input stream is already open, it closes it before opening the new one.
+     *
+     * @param inputStream The input stream in which read the XML elements
+     * @throws XMLStreamException if an error was encountered while creating the reader or while skipping tags
+     */
+    public synchronized void open(InputStream inputStream) throws XMLStreamException {
+        open(inputStream, 1);
+    }
+
+    /**
+     * Opens the given input stream in which the XML file has to be read and starts reading it.
+     * It skips the beginning of the document with XML definition and a number of container tags
+     * (putting 1 as {@code skipDepth} corresponds to only skip the root element).
+     * If an input stream is already open, it closes it before opening the new one.
+     *
+     * @param inputStream The input stream in which read the XML elements
+     * @param skipDepth   The number of container to skip before reaching the stream of desired elements
+     * @throws XMLStreamException if an error was encountered while creating the reader or while skipping tags
+     */
+    public synchronized void open(InputStream inputStream, int skipDepth) throws XMLStreamException {
+        if (reader != null) {
+            stopReading();
+        }
+
+        // Always synchronized, as it is opened in this thread and then read and closed by the reader thread
+        StreamingUnmarshaller source = new StreamingUnmarshaller(engine);
+        try {
+            source.open(inputStream, skipDepth);
+        } catch (XMLStreamException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+        results = new LinkedBlockingQueue<>();
+        pending = new Semaphore(capacity);
+
+        BlockingQueue<Future<Element>> target = results;
+        Semaphore permits = pending;
+        reader = new Thread(() -> read(source, target, permits), "jaxb-stream-reader-" + THREAD_COUNTER.incrementAndGet());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Records the elements of the stream and submits them to the worker threads.
+     * Runs in the reader thread until the end of the stream, and always ends the results when stopping
+     * (after the elements still being unmarshalled in unordered mode), even when failing or interrupted.
+     * The source is closed by the reader thread itself, so that it is never closed while being read.
+     */
+    private void read(StreamingUnmarshaller source, BlockingQueue<Future<Element>> target, Semaphore permits) {
+        // Counts the reader itself and the elements not yet delivered (unordered mode only)
+        AtomicInteger remaining = new AtomicInteger(1);
+        try {
+            while (source.hasNext()) {
+                permits.acquire();
+                ReplayStreamReader record = source.nextRecord();
+                CompletableFuture<Element> future = CompletableFuture.supplyAsync(() -> unmarshal(record), workers);
+                if (ordered) {
+                    target.add(future);
+                } else {
+                    remaining.incrementAndGet();
+                    future.whenComplete((element, error) -> {
+                        target.add(future);
+                        if (remaining.decrementAndGet() == 0) {
+                            target.add(END);
+                        }
+                    });
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            target.add(CompletableFuture.failedFuture(e));
+        } finally {
+            source.close();
+            if (remaining.decrementAndGet() == 0) {
+                target.add(END);
+            }
+        }
+    }
+
+    /**
+     * Unmarshals the given recorded element with the codec of its type, or with an unmarshaller taken from the pool.
+     * Runs in the worker threads.
+     */
+    private Element unmarshal(ReplayStreamReader record) {
+        Class<?> type = record.getType();
+        ElementCodec<?> codec = engine.getCodec(type);
+        if (codec != null) {
+            try {
+                return new Element(type, codec.read(record));
+            } catch (XMLStreamException e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        Queue<Unmarshaller> pool = unmarshallerPool.computeIfAbsent(type, key -> new ConcurrentLinkedQueue<>());
+        Unmarshaller elementUnmarshaller = pool.poll();
+        try {
+            if (elementUnmarshaller == null) {
+                elementUnmarshaller = engine.getContext(type).createUnmarshaller();
+            }
+            return new Element(type, elementUnmarshaller.unmarshal(record, type).getValue());
+        } catch (JAXBException e) {
+            throw new CompletionException(e);
+        } finally {
+            if (elementUnmarshaller != null) {
+                pool.offer(elementUnmarshaller);
+            }
+        }
+    }
+
+    /**
+     * Iterates over all elements with the given consumer, in the order defined at instantiation.
+     * The consumer is called in the current thread.
+     *
+     * @param consumer The consumer called for each element of the stream
+     * @throws XMLStreamException if an error was encountered while reading the stream
+     * @throws JAXBException      if an error was encountered while unmarshalling an element
+     */
+    public void iterate(BiConsumer<Class<?>, Object> consumer) throws JAXBException, XMLStreamException {
+        Element element = take();
+        while (element != null) {
+            consumer.accept(element.getType(), element.getValue());
+            element = take();
+        }
+    }
+
+    /**
+     * Takes the next element delivered by the worker threads, waiting for it if necessary.
+     *
+     * @return The next element or {@code null} if the end of the stream has been reached
+     */
+    private Element take() throws JAXBException, XMLStreamException {
+        if (results == null) {
+            throw new XMLStreamException("The stream has to be opened before reading it");
+        }
+
+        try {
+            Future<Element> future = results.take();
+            if (future == END) {
+                // Keep the marker for the following calls
+                results.add(END);
+                return null;
+            }
+            pending.release();
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException("Interrupted while waiting for the next element", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof JAXBException) {
+                throw (JAXBException) cause;
+            } else if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new JAXBException(cause);
+        }
+    }
+
+    private void stopReading() {
+        if (reader != null) {
+            reader.interrupt();
+            reader = null;
+        }
+        results = null;
+        pending = null;
+    }
+
+    /**
+     * Stops reading and closes the worker threads.
+     * The stream is closed by the reader thread as soon as it stops.
+     */
+    @Override
+    public synchronized void close() {
+        stopReading();
+        workers.shutdownNow();
+    }
+
+    @Value
+    private static class Element {
+
+        Class<?> type;
+        Object value;
+
+    }
+
+}
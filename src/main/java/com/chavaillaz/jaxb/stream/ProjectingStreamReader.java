@@ -0,0 +1,97 @@
+package com.chavaillaz.jaxb.stream;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.util.Set;
+
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * Reader delegate exposing only the projected direct children of the current element.
+ * <p>
+ * It has to be reset on the start tag of the element to read. The direct children whose local name
+ * is not projected are then skipped on the underlying reader, without being seen by the consumer
+ * of this delegate (typically a JAXB unmarshaller).
+ */
+class ProjectingStreamReader extends StreamReaderDelegate {
+
+    private Set<String> names;
+    private int depth;
+
+    /**
+     * Resets this delegate on the given reader, positioned on the start tag of the element to read.
+     *
+     * @param reader The underlying reader
+     * @param names  The local names of the direct children to keep
+     * @return The current delegate instance
+     */
+    ProjectingStreamReader reset(XMLStreamReader reader, Set<String> names) {
+        setParent(reader);
+        this.names = names;
+        this.depth = 1;
+        return this;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        int eventType = super.next();
+        while (eventType == START_ELEMENT && depth == 1 && !names.contains(getLocalName())) {
+            skipElement();
+            eventType = super.next();
+        }
+        if (eventType == START_ELEMENT) {
+            depth++;
+        } else if (eventType == END_ELEMENT) {
+            depth--;
+        }
+        return eventType;
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        // The underlying reader moves to the end tag of the current element
+        String text = super.getElementText();
+        depth--;
+        return text;
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int eventType = next();
+        while (eventType == CHARACTERS && isWhiteSpace()
+                || eventType == SPACE
+                || eventType == COMMENT
+                || eventType == PROCESSING_INSTRUCTION) {
+            eventType = next();
+        }
+        if (eventType != START_ELEMENT && eventType != END_ELEMENT) {
+            throw new XMLStreamException("Expected start or end tag", getLocation());
+        }
+        return eventType;
+    }
+
+    /**
+     * Skips the current element of the underlying reader, leaving it on the end tag of the element.
+     */
+    private void skipElement() throws XMLStreamException {
+        XMLStreamReader reader = getParent();
+        if (reader instanceof XMLStreamReader2) {
+            ((XMLStreamReader2) reader).skipElement();
+            return;
+        }
+
+        int level = 1;
+        while (level > 0) {
+            int eventType = reader.next();
+            if (eventType == START_ELEMENT) {
+                level++;
+            } else if (eventType == END_ELEMENT) {
+                level--;
+            }
+        }
+    }
+
+}
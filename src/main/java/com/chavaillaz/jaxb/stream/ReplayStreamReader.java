@@ -0,0 +1,580 @@
+package com.chavaillaz.jaxb.stream;
+
+import org.codehaus.stax2.XMLStreamReader2;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * Reader replaying the events of one element, recorded from another reader.
+ * <p>
+ * The events are recorded in compact arrays (names and attribute values by reference, texts copied in one
+ * character buffer), reused from one element to the next, so that recording an element does not serialize it
+ * and does not allocate in this reader once its buffers have grown. The element can then be replayed to a JAXB unmarshaller
+ * or a codec, without being written and parsed again. Only the events needed to bind the element are recorded
+ * (tags, attributes, namespace declarations and texts), the comments and processing instructions being dropped.
+ */
+class ReplayStreamReader implements XMLStreamReader {
+
+    private static final Location UNKNOWN_LOCATION = new UnknownLocation();
+
+    private int[] events = new int[32];
+    private int[] offsets = new int[32];
+    private int[] lengths = new int[32];
+    private int[] attributeCounts = new int[32];
+    private String[] names = new String[64];
+    private char[] text = new char[512];
+    private int[] open = new int[8];
+    private int eventCount;
+    private int nameCount;
+    private int textLength;
+    private int depth;
+    private Class<?> type;
+    private NamespaceContext outerContext;
+    private int cursor;
+
+    /**
+     * Clears the events recorded, to record a new element of the given type.
+     *
+     * @param type The type of the element to record
+     */
+    void clear(Class<?> type) {
+        Arrays.fill(names, 0, nameCount, null);
+        this.type = type;
+        this.outerContext = null;
+        this.eventCount = 0;
+        this.nameCount = 0;
+        this.textLength = 0;
+        this.depth = 0;
+        this.cursor = 0;
+    }
+
+    /**
+     * Gets the type of the element recorded.
+     *
+     * @return The element type
+     */
+    Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Records the current event of the given reader, positioned inside the element to record
+     * (from its start tag to its end tag).
+     *
+     * @param reader The reader positioned on the event to record
+     */
+    void record(XMLStreamReader reader) {
+        switch (reader.getEventType()) {
+            case START_ELEMENT:
+                recordStart(reader);
+                break;
+            case END_ELEMENT:
+                int start = open[--depth];
+                add(END_ELEMENT, offsets[start], lengths[start], 0);
+                break;
+            case CHARACTERS:
+            case SPACE:
+            case CDATA:
+                int length = reader.getTextLength();
+                text = ensure(text, textLength + length);
+                System.arraycopy(reader.getTextCharacters(), reader.getTextStart(), text, textLength, length);
+                add(reader.getEventType(), textLength, length, 0);
+                textLength += length;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Keeps the namespace context surrounding the element recorded, resolving the prefixes declared outside of it.
+     * It has to be called while the given reader is still positioned on the end tag of the element.
+     *
+     * @param reader The reader from which the element has been recorded
+     */
+    void recordContext(XMLStreamReader reader) {
+        if (reader instanceof XMLStreamReader2) {
+            outerContext = ((XMLStreamReader2) reader).getNonTransientNamespaceContext();
+        }
+    }
+
+    /**
+     * Rewinds this reader on the start tag of the element recorded, to replay it.
+     *
+     * @return The current reader instance
+     */
+    ReplayStreamReader rewind() {
+        cursor = 0;
+        depth = 0;
+        return this;
+    }
+
+    private void recordStart(XMLStreamReader reader) {
+        int namespaceCount = reader.getNamespaceCount();
+        int attributeCount = reader.getAttributeCount();
+        int offset = nameCount;
+        names = ensure(names, nameCount + 3 + 2 * namespaceCount + 4 * attributeCount);
+        names[nameCount++] = reader.getPrefix();
+        names[nameCount++] = reader.getLocalName();
+        names[nameCount++] = reader.getNamespaceURI();
+        for (int i = 0; i < namespaceCount; i++) {
+            names[nameCount++] = reader.getNamespacePrefix(i);
+            names[nameCount++] = reader.getNamespaceURI(i);
+        }
+        for (int i = 0; i < attributeCount; i++) {
+            names[nameCount++] = reader.getAttributePrefix(i);
+            names[nameCount++] = reader.getAttributeNamespace(i);
+            names[nameCount++] = reader.getAttributeLocalName(i);
+            names[nameCount++] = reader.getAttributeValue(i);
+        }
+        open = ensure(open, depth + 1);
+        open[depth++] = eventCount;
+        add(START_ELEMENT, offset, namespaceCount, attributeCount);
+    }
+
+    private void add(int eventType, int offset, int length, int attributeCount) {
+        if (eventCount == events.length) {
+            int capacity = eventCount * 2;
+            events = Arrays.copyOf(events, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            attributeCounts = Arrays.copyOf(attributeCounts, capacity);
+        }
+        events[eventCount] = eventType;
+        offsets[eventCount] = offset;
+        lengths[eventCount] = length;
+        attributeCounts[eventCount] = attributeCount;
+        eventCount++;
+    }
+
+    private static int[] ensure(int[] array, int size) {
+        return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+    }
+
+    private static char[] ensure(char[] array, int size) {
+        return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+    }
+
+    private static String[] ensure(String[] array, int size) {
+        return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+    }
+
+    private boolean isEnded() {
+        return cursor >= eventCount;
+    }
+
+    private int namesOffset() {
+        int eventType = getEventType();
+        if (eventType != START_ELEMENT && eventType != END_ELEMENT) {
+            throw new IllegalStateException("Current event is not a start or end tag");
+        }
+        return offsets[cursor];
+    }
+
+    private int attributeOffset(int index) {
+        if (getEventType() != START_ELEMENT) {
+            throw new IllegalStateException("Current event is not a start tag");
+        }
+        if (index < 0 || index >= attributeCounts[cursor]) {
+            throw new IndexOutOfBoundsException("Invalid attribute index " + index);
+        }
+        return offsets[cursor] + 3 + 2 * lengths[cursor] + 4 * index;
+    }
+
+    private int namespaceOffset(int index) {
+        int offset = namesOffset();
+        if (index < 0 || index >= lengths[cursor]) {
+            throw new IndexOutOfBoundsException("Invalid namespace index " + index);
+        }
+        return offset + 3 + 2 * index;
+    }
+
+    private void requireText() {
+        if (!hasText()) {
+            throw new IllegalStateException("Current event has no text");
+        }
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        if (isEnded()) {
+            throw new XMLStreamException("No more event to replay");
+        }
+        if (events[cursor] == START_ELEMENT) {
+            open = ensure(open, depth + 1);
+            open[depth++] = cursor;
+        } else if (events[cursor] == END_ELEMENT) {
+            depth--;
+        }
+        cursor++;
+        return getEventType();
+    }
+
+    @Override
+    public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+        if (type != getEventType()
+                || namespaceURI != null && !namespaceURI.equals(getNamespaceURI())
+                || localName != null && !localName.equals(getLocalName())) {
+            throw new XMLStreamException("Required event " + type + " " + namespaceURI + " " + localName + " not matched");
+        }
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (getEventType() != START_ELEMENT) {
+            throw new XMLStreamException("Current event is not a start tag");
+        }
+        StringBuilder builder = new StringBuilder();
+        int eventType = next();
+        while (eventType != END_ELEMENT) {
+            if (eventType == START_ELEMENT) {
+                throw new XMLStreamException("Element text cannot contain child elements");
+            }
+            builder.append(text, offsets[cursor], lengths[cursor]);
+            eventType = next();
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int eventType = next();
+        while (eventType == CHARACTERS && isWhiteSpace() || eventType == SPACE) {
+            eventType = next();
+        }
+        if (eventType != START_ELEMENT && eventType != END_ELEMENT) {
+            throw new XMLStreamException("Expected start or end tag");
+        }
+        return eventType;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !isEnded();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the buffers are reused for the next element
+    }
+
+    @Override
+    public String getNamespaceURI(String prefix) {
+        Objects.requireNonNull(prefix, "prefix");
+        // The declarations of the current start tag, then of the elements still open
+        String namespaceURI = isStartElement() ? getDeclaredNamespace(cursor, prefix) : null;
+        for (int level = depth - 1; namespaceURI == null && level >= 0; level--) {
+            namespaceURI = getDeclaredNamespace(open[level], prefix);
+        }
+        if (namespaceURI == null && outerContext != null) {
+            namespaceURI = outerContext.getNamespaceURI(prefix);
+        }
+        return namespaceURI;
+    }
+
+    /**
+     * Gets the namespace bound to the given prefix by the start tag of the given index, if declared there.
+     */
+    private String getDeclaredNamespace(int index, String prefix) {
+        int offset = offsets[index];
+        for (int i = 0; i < lengths[index]; i++) {
+            String declared = names[offset + 3 + 2 * i];
+            if (prefix.equals(declared == null ? XMLConstants.DEFAULT_NS_PREFIX : declared)) {
+                return names[offset + 4 + 2 * i];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isStartElement() {
+        return getEventType() == START_ELEMENT;
+    }
+
+    @Override
+    public boolean isEndElement() {
+        return getEventType() == END_ELEMENT;
+    }
+
+    @Override
+    public boolean isCharacters() {
+        return getEventType() == CHARACTERS;
+    }
+
+    @Override
+    public boolean isWhiteSpace() {
+        if (getEventType() == SPACE) {
+            return true;
+        }
+        if (getEventType() != CHARACTERS) {
+            return false;
+        }
+        for (int i = offsets[cursor], end = i + lengths[cursor]; i < end; i++) {
+            if (!Character.isWhitespace(text[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String getAttributeValue(String namespaceURI, String localName) {
+        if (getEventType() != START_ELEMENT) {
+            throw new IllegalStateException("Current event is not a start tag");
+        }
+        for (int i = 0; i < attributeCounts[cursor]; i++) {
+            int offset = attributeOffset(i);
+            if (localName.equals(names[offset + 2])
+                    && (namespaceURI == null || namespaceURI.equals(valueOf(names[offset + 1])))) {
+                return names[offset + 3];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        if (getEventType() != START_ELEMENT) {
+            throw new IllegalStateException("Current event is not a start tag");
+        }
+        return attributeCounts[cursor];
+    }
+
+    @Override
+    public QName getAttributeName(int index) {
+        int offset = attributeOffset(index);
+        return new QName(valueOf(names[offset + 1]), names[offset + 2], valueOf(names[offset]));
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        return names[attributeOffset(index) + 1];
+    }
+
+    @Override
+    public String getAttributeLocalName(int index) {
+        return names[attributeOffset(index) + 2];
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        return names[attributeOffset(index)];
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        attributeOffset(index);
+        return "CDATA";
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        return names[attributeOffset(index) + 3];
+    }
+
+    @Override
+    public boolean isAttributeSpecified(int index) {
+        attributeOffset(index);
+        return true;
+    }
+
+    @Override
+    public int getNamespaceCount() {
+        namesOffset();
+        return lengths[cursor];
+    }
+
+    @Override
+    public String getNamespacePrefix(int index) {
+        return names[namespaceOffset(index)];
+    }
+
+    @Override
+    public String getNamespaceURI(int index) {
+        return names[namespaceOffset(index) + 1];
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return new NamespaceContext() {
+
+            @Override
+            public String getNamespaceURI(String prefix) {
+                return ReplayStreamReader.this.getNamespaceURI(prefix);
+            }
+
+            @Override
+            public String getPrefix(String namespaceURI) {
+                return outerContext != null ? outerContext.getPrefix(namespaceURI) : null;
+            }
+
+            @Override
+            public Iterator<String> getPrefixes(String namespaceURI) {
+                return outerContext != null ? outerContext.getPrefixes(namespaceURI) : Collections.emptyIterator();
+            }
+
+        };
+    }
+
+    @Override
+    public int getEventType() {
+        return isEnded() ? END_DOCUMENT : events[cursor];
+    }
+
+    @Override
+    public String getText() {
+        requireText();
+        return new String(text, offsets[cursor], lengths[cursor]);
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        requireText();
+        return text;
+    }
+
+    @Override
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length) {
+        requireText();
+        int copied = Math.max(0, Math.min(length, lengths[cursor] - sourceStart));
+        System.arraycopy(text, offsets[cursor] + sourceStart, target, targetStart, copied);
+        return copied;
+    }
+
+    @Override
+    public int getTextStart() {
+        requireText();
+        return offsets[cursor];
+    }
+
+    @Override
+    public int getTextLength() {
+        requireText();
+        return lengths[cursor];
+    }
+
+    @Override
+    public String getEncoding() {
+        return null;
+    }
+
+    @Override
+    public boolean hasText() {
+        int eventType = getEventType();
+        return eventType == CHARACTERS || eventType == SPACE || eventType == CDATA;
+    }
+
+    @Override
+    public Location getLocation() {
+        return UNKNOWN_LOCATION;
+    }
+
+    @Override
+    public QName getName() {
+        int offset = namesOffset();
+        return new QName(valueOf(names[offset + 2]), names[offset + 1], valueOf(names[offset]));
+    }
+
+    @Override
+    public String getLocalName() {
+        return names[namesOffset() + 1];
+    }
+
+    @Override
+    public boolean hasName() {
+        return isStartElement() || isEndElement();
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        return names[namesOffset() + 2];
+    }
+
+    @Override
+    public String getPrefix() {
+        return names[namesOffset()];
+    }
+
+    @Override
+    public String getVersion() {
+        return null;
+    }
+
+    @Override
+    public boolean isStandalone() {
+        return false;
+    }
+
+    @Override
+    public boolean standaloneSet() {
+        return false;
+    }
+
+    @Override
+    public String getCharacterEncodingScheme() {
+        return null;
+    }
+
+    @Override
+    public String getPITarget() {
+        return null;
+    }
+
+    @Override
+    public String getPIData() {
+        return null;
+    }
+
+    private static String valueOf(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Location of the events replayed, which is not known anymore.
+     */
+    private static class UnknownLocation implements Location {
+
+        @Override
+        public int getLineNumber() {
+            return -1;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return -1;
+        }
+
+        @Override
+        public int getCharacterOffset() {
+            return -1;
+        }
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+
+    }
+
+}
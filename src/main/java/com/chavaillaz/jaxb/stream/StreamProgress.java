@@ -0,0 +1,227 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Progress of a stream, updated by the thread reading or writing it and exposed through JMX to any other thread.
+ * The recent rates are computed from samples taken every second by a shared daemon thread while it is registered,
+ * so that they do not depend on how often they are polled and cost nothing to the stream thread.
+ */
+@Slf4j
+class StreamProgress implements StreamProgressMXBean {
+
+    static final String DOMAIN = "com.chavaillaz.jaxb.stream";
+
+    private static final AtomicLong IDENTIFIERS = new AtomicLong();
+    private static final long SAMPLE_INTERVAL = SECONDS.toNanos(1);
+    private static final ScheduledThreadPoolExecutor SAMPLER = createSampler();
+
+    private final AtomicLong elements = new AtomicLong();
+    private final String operation;
+    private final LongSupplier position;
+    private final long start;
+    private volatile String file;
+    private volatile long inputLength;
+    private ObjectName name;
+    private ScheduledFuture<?> sampling;
+    private Sample previous;
+    private Sample latest;
+
+    /**
+     * Creates the progress of a stream just opened.
+     *
+     * @param operation   The operation done on the stream
+     * @param position    The supplier of the number of bytes processed, callable from any thread
+     * @param inputLength The length of the input, or {@code -1} if unknown
+     */
+    StreamProgress(String operation, LongSupplier position, long inputLength) {
+        this.operation = operation;
+        this.position = position;
+        this.inputLength = inputLength;
+        this.start = System.nanoTime();
+        this.previous = new Sample(start, 0, 0);
+        this.latest = previous;
+    }
+
+    private static ScheduledThreadPoolExecutor createSampler() {
+        ScheduledThreadPoolExecutor sampler = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "jaxb-stream-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.setRemoveOnCancelPolicy(true);
+        return sampler;
+    }
+
+    /**
+     * Describes the file of the stream, once known.
+     *
+     * @param file The file path
+     */
+    void describe(String file) {
+        this.file = file;
+    }
+
+    /**
+     * Sets the length of the input, once known.
+     *
+     * @param inputLength The length of the input, or {@code -1} if unknown
+     */
+    void setInputLength(long inputLength) {
+        this.inputLength = inputLength;
+    }
+
+    /**
+     * Sets the number of elements processed, with a cheap ordered write (only called by the stream thread).
+     *
+     * @param count The number of elements read or written
+     */
+    void setElements(long count) {
+        elements.lazySet(count);
+    }
+
+    /**
+     * Registers this progress in the platform MBean server, under a name unique to the stream,
+     * and starts sampling it for the recent rates.
+     */
+    void register() {
+        sampling = SAMPLER.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL, SAMPLE_INTERVAL, NANOSECONDS);
+        try {
+            name = new ObjectName(DOMAIN + ":type=Stream,operation=" + operation + ",id=" + IDENTIFIERS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (JMException e) {
+            log.warn("Unable to register the progress of the stream", e);
+            name = null;
+        }
+    }
+
+    /**
+     * Unregisters this progress from the platform MBean server and stops sampling it, when the stream is closed.
+     */
+    void unregister() {
+        if (sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                log.warn("Unable to unregister the progress of the stream", e);
+            }
+            name = null;
+        }
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String getFile() {
+        return file;
+    }
+
+    @Override
+    public long getElements() {
+        return elements.get();
+    }
+
+    @Override
+    public long getPosition() {
+        return position.getAsLong();
+    }
+
+    @Override
+    public long getInputLength() {
+        return inputLength;
+    }
+
+    @Override
+    public double getProgress() {
+        long length = inputLength;
+        return length > 0 ? Math.min(100.0, 100.0 * getPosition() / length) : -1;
+    }
+
+    @Override
+    public long getElapsedSeconds() {
+        return NANOSECONDS.toSeconds(System.nanoTime() - start);
+    }
+
+    @Override
+    public double getElementsPerSecond() {
+        return recentRate(false);
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return recentRate(true);
+    }
+
+    @Override
+    public double getAverageElementsPerSecond() {
+        return rate(getElements(), System.nanoTime() - start);
+    }
+
+    @Override
+    public double getAverageBytesPerSecond() {
+        return rate(getPosition(), System.nanoTime() - start);
+    }
+
+    @Override
+    public long getEstimatedSecondsRemaining() {
+        long length = inputLength;
+        double rate = getBytesPerSecond();
+        if (length <= 0 || rate <= 0) {
+            return -1;
+        }
+        return (long) Math.ceil(Math.max(0, length - getPosition()) / rate);
+    }
+
+    /**
+     * Takes a new sample, called by the sampler thread at each sample interval.
+     */
+    synchronized void sample() {
+        previous = latest;
+        latest = new Sample(System.nanoTime(), getElements(), getPosition());
+    }
+
+    /**
+     * Gets the rate between the two latest samples, covering the last sample interval,
+     * or since the opening of the stream when no sample has been taken yet.
+     */
+    private synchronized double recentRate(boolean bytes) {
+        Sample from = previous;
+        Sample to = latest;
+        if (from == to) {
+            to = new Sample(System.nanoTime(), getElements(), getPosition());
+        }
+        long count = bytes ? to.getPosition() - from.getPosition() : to.getElements() - from.getElements();
+        return rate(count, to.getTime() - from.getTime());
+    }
+
+    private static double rate(long count, long nanos) {
+        return nanos > 0 ? count * 1e9 / nanos : 0;
+    }
+
+    @Value
+    private static class Sample {
+        long time;
+        long elements;
+        long position;
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.chavaillaz.jaxb.stream;
+
+/**
+ * Management interface exposing the live progress of a stream read or written, registered in the platform
+ * MBean server under {@code com.chavaillaz.jaxb.stream:type=Stream} while the stream is open
+ * (when monitoring is enabled in the {@link StreamingEngine}).
+ * <p>
+ * The rates are measured over the last seconds, so that a stream slowing down can be distinguished
+ * from its average rates since its opening.
+ */
+public interface StreamProgressMXBean {
+
+    /**
+     * Gets the operation done on the stream.
+     *
+     * @return {@code Read} or {@code Write}
+     */
+    String getOperation();
+
+    /**
+     * Gets the file of the stream.
+     *
+     * @return The file path, or {@code null} if the stream has not been opened from a file
+     */
+    String getFile();
+
+    /**
+     * Gets the number of elements processed so far.
+     *
+     * @return The number of elements read or written
+     */
+    long getElements();
+
+    /**
+     * Gets the number of bytes processed so far.
+     *
+     * @return The number of bytes read or written
+     */
+    long getPosition();
+
+    /**
+     * Gets the length of the input read.
+     *
+     * @return The input length, or {@code -1} if unknown (and for the streams written)
+     */
+    long getInputLength();
+
+    /**
+     * Gets the percentage of the input read so far.
+     *
+     * @return The percentage between 0 and 100, or {@code -1} if the input length is unknown
+     */
+    double getProgress();
+
+    /**
+     * Gets the time elapsed since the opening of the stream.
+     *
+     * @return The elapsed time in seconds
+     */
+    long getElapsedSeconds();
+
+    /**
+     * Gets the number of elements processed per second over the last sample interval (one second).
+     *
+     * @return The recent rate of elements
+     */
+    double getElementsPerSecond();
+
+    /**
+     * Gets the number of bytes processed per second over the last sample interval (one second).
+     *
+     * @return The recent rate of bytes
+     */
+    double getBytesPerSecond();
+
+    /**
+     * Gets the number of elements processed per second since the opening of the stream.
+     *
+     * @return The average rate of elements
+     */
+    double getAverageElementsPerSecond();
+
+    /**
+     * Gets the number of bytes processed per second since the opening of the stream.
+     *
+     * @return The average rate of bytes
+     */
+    double getAverageBytesPerSecond();
+
+    /**
+     * Gets the estimated time needed to read the rest of the input, at the recent rate of bytes.
+     *
+     * @return The remaining time in seconds, or {@code -1} if it cannot be estimated
+     */
+    long getEstimatedSecondsRemaining();
+
+}
@@ -0,0 +1,549 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.ctc.wstx.stax.WstxOutputFactory;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.annotation.XmlElement;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import static com.chavaillaz.jaxb.stream.StreamingMarshaller.getAnnotation;
+import static com.chavaillaz.jaxb.stream.processor.CodecProcessor.CODEC_SUFFIX;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.stream.Collectors.toSet;
+import static javax.xml.stream.XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES;
+import static javax.xml.stream.XMLInputFactory.SUPPORT_DTD;
+import static javax.xml.stream.XMLOutputFactory.IS_REPAIRING_NAMESPACES;
+import static org.codehaus.stax2.XMLOutputFactory2.P_AUTOMATIC_EMPTY_ELEMENTS;
+
+/**
+ * Immutable and thread-safe configuration of the streaming marshallers and unmarshallers.
+ * <p>
+ * The engine is built once with the element types, their JAXB contexts and the StAX factories,
+ * and can then be shared by all threads to create lightweight marshallers and unmarshallers
+ * (one per stream to process), without building again the whole type configuration.
+ * <p>
+ * You can use it with:
+ * <pre>
+ *     StreamingEngine engine = StreamingEngine.builder()
+ *             .types(DiskMetric.class, MemoryMetric.class)
+ *             .build();
+ *
+ *     // In any thread
+ *     try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+ *         unmarshaller.open(inputStream);
+ *         unmarshaller.iterate((type, element) -&gt; doSomething(element));
+ *     }
+ * </pre>
+ * The marshallers and unmarshallers created are thread-safe by default, so that one stream can be shared by multiple
+ * threads. When built without synchronized streams, they do not take any lock and must be used by a single thread.
+ */
+@Slf4j
+@Getter
+public class StreamingEngine {
+
+    private static final StreamingEngine DEFAULT = new StreamingEngine(emptyMap(), emptyMap(), ContextCache.getDefault(), true, false, false, StreamingMetrics.NONE, false);
+
+    /**
+     * The codecs generated at compile time for each type, or {@code null} for the types without codec.
+     */
+    private static final ClassValue<ElementCodec<?>> GENERATED_CODECS = new ClassValue<>() {
+        @Override
+        protected ElementCodec<?> computeValue(Class<?> type) {
+            return loadGeneratedCodec(type);
+        }
+    };
+
+    /**
+     * The element types indexed by their XML tag name.
+     */
+    private final Map<String, Class<?>> types;
+
+    /**
+     * The element types indexed by namespace and then by local name, to resolve types without any allocation.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Map<String, Class<?>>> typesByName = new HashMap<>();
+
+    /**
+     * The contexts created for each of the element types.
+     */
+    private final Map<Class<?>, JAXBContext> contexts;
+
+    /**
+     * The cache used for the contexts of types not registered in the engine.
+     */
+    private final ContextCache contextCache;
+
+    /**
+     * Indicates if the marshallers and unmarshallers created are synchronized, to be used by multiple threads.
+     */
+    private final boolean synchronizedStreams;
+
+    /**
+     * Indicates if the unmarshallers skip the elements of unknown types instead of failing on them.
+     */
+    private final boolean skipUnknown;
+
+    /**
+     * Indicates if the codecs generated at compile time are used instead of JAXB for their types.
+     */
+    private final boolean generatedCodecs;
+
+    /**
+     * The metrics receiving the measures of the marshallers and unmarshallers ({@link StreamingMetrics#NONE} by default).
+     */
+    private final StreamingMetrics metrics;
+
+    /**
+     * Indicates if the progress of the open marshallers and unmarshallers is exposed through JMX.
+     */
+    private final boolean monitoring;
+
+    /**
+     * The factory used to create XML stream readers, denying all access to external references.
+     * It is only given to the unmarshallers of this package, so that nobody can enable them again.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final XMLInputFactory inputFactory;
+
+    /**
+     * The factory used to create XML stream writers.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final XMLOutputFactory outputFactory;
+
+    /**
+     * The factory used to write raw element fragments, repairing the namespaces declared outside the fragment.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final XMLOutputFactory fragmentFactory;
+
+    private StreamingEngine(Map<String, Class<?>> types, Map<Class<?>, JAXBContext> contexts, ContextCache contextCache,
+                            boolean synchronizedStreams, boolean skipUnknown, boolean generatedCodecs, StreamingMetrics metrics,
+                            boolean monitoring) {
+        this.types = unmodifiableMap(types);
+        types.forEach((name, type) -> {
+            QName qualifiedName = QName.valueOf(name);
+            typesByName.computeIfAbsent(qualifiedName.getNamespaceURI(), key -> new HashMap<>())
+                    .put(qualifiedName.getLocalPart(), type);
+        });
+        this.contexts = unmodifiableMap(contexts);
+        this.contextCache = contextCache;
+        this.synchronizedStreams = synchronizedStreams;
+        this.skipUnknown = skipUnknown;
+        this.generatedCodecs = generatedCodecs;
+        this.metrics = metrics;
+        this.monitoring = monitoring;
+        this.inputFactory = XMLInputFactory.newInstance();
+        // Deny all access to external references
+        this.inputFactory.setProperty(IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        this.inputFactory.setProperty(SUPPORT_DTD, false);
+        this.outputFactory = new WstxOutputFactory();
+        this.outputFactory.setProperty(P_AUTOMATIC_EMPTY_ELEMENTS, true);
+        this.fragmentFactory = new WstxOutputFactory();
+        this.fragmentFactory.setProperty(IS_REPAIRING_NAMESPACES, true);
+    }
+
+    /**
+     * Gets the engine without any element type, used by default by the marshallers.
+     *
+     * @return The default engine instance
+     */
+    public static StreamingEngine getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Creates a new builder to configure an engine.
+     *
+     * @return The builder created
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Gets the element type registered for the given XML tag name.
+     *
+     * @param name The tag name of the XML element
+     * @return The type or {@code null} when no type has been registered for this name
+     */
+    public Class<?> getType(String name) {
+        return types.get(name);
+    }
+
+    /**
+     * Gets the element type registered for the given XML namespace and local name, without any allocation.
+     *
+     * @param namespace The namespace of the XML element ({@code null} or empty when there is none)
+     * @param localName The local name of the XML element
+     * @return The type or {@code null} when no type has been registered for this name
+     */
+    public Class<?> getType(String namespace, String localName) {
+        Map<String, Class<?>> localTypes = typesByName.get(namespace == null ? "" : namespace);
+        return localTypes == null ? null : localTypes.get(localName);
+    }
+
+    /**
+     * Gets the context for the given type.
+     * When the type has not been registered in the engine, the context is taken from the context cache.
+     *
+     * @param type The type the context has to handle
+     * @return The context capable of handling the given type
+     * @throws JAXBException if an error was encountered while creating the context
+     */
+    public JAXBContext getContext(Class<?> type) throws JAXBException {
+        JAXBContext context = contexts.get(type);
+        if (context == null) {
+            context = contextCache.getContext(type);
+        }
+        return context;
+    }
+
+    /**
+     * Gets the codec to use instead of JAXB for the given type.
+     *
+     * @param type The element type
+     * @param <T>  The element type
+     * @return The codec generated for this type, or {@code null} when there is none (or when they are disabled)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ElementCodec<T> getCodec(Class<T> type) {
+        return generatedCodecs ? (ElementCodec<T>) GENERATED_CODECS.get(type) : null;
+    }
+
+    /**
+     * Loads the codec generated for the given type by {@link com.chavaillaz.jaxb.stream.processor.CodecProcessor}.
+     */
+    private static ElementCodec<?> loadGeneratedCodec(Class<?> type) {
+        String packageName = type.getPackageName();
+        String flatName = type.getName().substring(packageName.isEmpty() ? 0 : packageName.length() + 1).replace('$', '_');
+        String codecName = (packageName.isEmpty() ? "" : packageName + ".") + flatName + CODEC_SUFFIX;
+        try {
+            Class<?> codecType = Class.forName(codecName, true, type.getClassLoader());
+            ElementCodec<?> codec = (ElementCodec<?>) codecType.getDeclaredConstructor().newInstance();
+            return codec.getType() == type ? codec : null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+            log.warn("Unable to load the codec generated for {}, using JAXB", type, e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates a new unmarshaller reading the element types of this engine.
+     * It is an {@link UnsynchronizedStreamingUnmarshaller} when the engine has been built without synchronized streams.
+     *
+     * @return The unmarshaller created, thread-safe only when the engine has synchronized streams
+     */
+    public StreamingUnmarshaller newUnmarshaller() {
+        return synchronizedStreams ? new StreamingUnmarshaller(this) : new UnsynchronizedStreamingUnmarshaller(this);
+    }
+
+    /**
+     * Creates a new marshaller writing elements in the given root element.
+     * It is an {@link UnsynchronizedStreamingMarshaller} when the engine has been built without synchronized streams.
+     *
+     * @param rootElement The root used as XML container where to store the elements to write
+     * @return The marshaller created, thread-safe only when the engine has synchronized streams
+     */
+    public StreamingMarshaller newMarshaller(@NonNull String rootElement) {
+        return synchronizedStreams
+                ? new StreamingMarshaller(this, rootElement)
+                : new UnsynchronizedStreamingMarshaller(this, rootElement);
+    }
+
+    /**
+     * Creates a new marshaller writing elements in the given root element class.
+     * Please note that the given class needs the {@link XmlRootElement} annotation.
+     *
+     * @param type The root class defining the XML container where to store the elements to write
+     * @return The marshaller created, thread-safe only when the engine has synchronized streams
+     * @throws IllegalArgumentException if the {@link XmlRootElement} annotation is missing for the given type
+     */
+    public StreamingMarshaller newMarshaller(@NonNull Class<?> type) {
+        return newMarshaller(getAnnotation(type, XmlRootElement.class).name());
+    }
+
+    /**
+     * Splits the given file into ranges of bytes, each containing a sequence of whole elements,
+     * so that they can be read independently with {@link StreamingUnmarshaller#open(FileRange)}.
+     * Each range is aligned on the start tag of one of the element types of this engine.
+     * Please note that the file must have a flat layout (the root element directly containing the elements)
+     * and be encoded in UTF-8.
+     *
+     * @param file  The file to split
+     * @param count The number of ranges wanted (less ranges are returned if the elements are too big)
+     * @return The list of ranges, in the order of the file
+     * @throws IOException if an error was encountered while reading the file
+     */
+    public List<FileRange> split(@NonNull Path file, int count) throws IOException {
+        Set<String> names = types.keySet().stream()
+                .map(name -> QName.valueOf(name).getLocalPart())
+                .collect(toSet());
+        return FileSplitter.split(file, count, names);
+    }
+
+    /**
+     * Iterates over all elements of the given file with the given consumer, splitting the file into ranges
+     * read in parallel by independent unmarshallers (see {@link #split(Path, int)}).
+     * Note that the consumer is called concurrently by multiple threads, without any guarantee on the order.
+     *
+     * @param file        The file to read
+     * @param parallelism The number of ranges to read in parallel
+     * @param consumer    The thread-safe consumer called for each element of the file
+     * @throws IOException        if an error was encountered while reading the file
+     * @throws XMLStreamException if an error was encountered while reading the elements
+     * @throws JAXBException      if an error was encountered while unmarshalling an element
+     */
+    public void iterate(@NonNull Path file, int parallelism, BiConsumer<Class<?>, Object> consumer)
+            throws IOException, XMLStreamException, JAXBException {
+        List<FileRange> ranges = split(file, parallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (FileRange range : ranges) {
+                results.add(executor.submit(() -> {
+                    try (StreamingUnmarshaller unmarshaller = newUnmarshaller()) {
+                        unmarshaller.open(range);
+                        unmarshaller.iterate(consumer);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLStreamException("Interrupted while reading " + file, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            } else if (cause instanceof JAXBException) {
+                throw (JAXBException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new StreamingException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Builder of {@link StreamingEngine} instances.
+     */
+    public static class Builder {
+
+        private final Map<Class<?>, String> types = new LinkedHashMap<>();
+        private ContextCache contextCache = ContextCache.getDefault();
+        private JAXBContext context;
+        private boolean sharedContext;
+        private boolean synchronizedStreams = true;
+        private boolean skipUnknown;
+        private boolean generatedCodecs;
+        private StreamingMetrics metrics = StreamingMetrics.NONE;
+        private boolean monitoring;
+
+        /**
+         * Registers the given element types.
+         * Please note that the given classes need the {@link XmlRootElement} annotation.
+         *
+         * @param types The element types to register
+         * @return The current builder instance
+         * @throws IllegalArgumentException if the {@link XmlRootElement} annotation is missing for the given types
+         */
+        public Builder types(Class<?>... types) {
+            for (Class<?> type : types) {
+                type(type);
+            }
+            return this;
+        }
+
+        /**
+         * Registers the given element types.
+         * Please note that the {@link Map} has to contain each type with its XML tag name
+         * (equivalent to the value in {@link XmlRootElement} or {@link XmlElement})
+         *
+         * @param types The element types with their name to register
+         * @return The current builder instance
+         */
+        public Builder types(Map<Class<?>, String> types) {
+            this.types.putAll(types);
+            return this;
+        }
+
+        /**
+         * Registers the given element type.
+         * Please note that the given class needs the {@link XmlRootElement} annotation.
+         *
+         * @param type The element type to register
+         * @return The current builder instance
+         * @throws IllegalArgumentException if the {@link XmlRootElement} annotation is missing for the given type
+         */
+        public Builder type(@NonNull Class<?> type) {
+            return type(type, getAnnotation(type, XmlRootElement.class).name());
+        }
+
+        /**
+         * Registers the given element type with its XML tag name
+         * (equivalent to the value in {@link XmlRootElement} or {@link XmlElement}).
+         *
+         * @param type The element type to register
+         * @param name The tag name of the XML element
+         * @return The current builder instance
+         */
+        public Builder type(@NonNull Class<?> type, @NonNull String name) {
+            types.put(type, name);
+            return this;
+        }
+
+        /**
+         * Sets the context to use for all the registered types.
+         *
+         * @param context The context knowing all the registered types, or {@code null} to take them from the cache
+         * @return The current builder instance
+         */
+        public Builder context(JAXBContext context) {
+            this.context = context;
+            return this;
+        }
+
+        /**
+         * Sets if all the registered types have to be compiled into one single context,
+         * instead of having one context per type.
+         *
+         * @param sharedContext {@code true} to use one context for all types, {@code false} otherwise
+         * @return The current builder instance
+         */
+        public Builder sharedContext(boolean sharedContext) {
+            this.sharedContext = sharedContext;
+            return this;
+        }
+
+        /**
+         * Sets the cache from which the contexts are taken (the {@link ContextCache#getDefault() default} otherwise).
+         *
+         * @param contextCache The context cache to use
+         * @return The current builder instance
+         */
+        public Builder contextCache(@NonNull ContextCache contextCache) {
+            this.contextCache = contextCache;
+            return this;
+        }
+
+        /**
+         * Sets if the marshallers and unmarshallers created by the engine are synchronized (the default), so that
+         * they can be shared by multiple threads. When each stream is only used by one thread, disabling it avoids
+         * to take a lock for each element written or read (and the stream of an unmarshaller can then not be read
+         * in parallel).
+         *
+         * @param synchronizedStreams {@code true} to create synchronized streams, {@code false} otherwise
+         * @return The current builder instance
+         */
+        public Builder synchronizedStreams(boolean synchronizedStreams) {
+            this.synchronizedStreams = synchronizedStreams;
+            return this;
+        }
+
+        /**
+         * Sets if the unmarshallers created by the engine skip the elements whose type is not registered,
+         * instead of failing on them. These elements are skipped at the StAX level, without being unmarshalled.
+         *
+         * @param skipUnknown {@code true} to skip the unknown elements, {@code false} otherwise
+         * @return The current builder instance
+         */
+        public Builder skipUnknown(boolean skipUnknown) {
+            this.skipUnknown = skipUnknown;
+            return this;
+        }
+
+        /**
+         * Sets if the codecs generated at compile time (see {@link com.chavaillaz.jaxb.stream.processor.CodecProcessor})
+         * are used instead of JAXB for their types, or if JAXB is used for all types (the default).
+         * Note that the generated codecs are stricter than JAXB: invalid numbers, empty or nil elements of numeric
+         * fields fail instead of being ignored, and the namespaces of the child elements are not checked.
+         * They are also not used by the unmarshallers given an object factory.
+         *
+         * @param generatedCodecs {@code true} to use the generated codecs, {@code false} otherwise
+         * @return The current builder instance
+         */
+        public Builder generatedCodecs(boolean generatedCodecs) {
+            this.generatedCodecs = generatedCodecs;
+            return this;
+        }
+
+        /**
+         * Sets the metrics receiving the measures of the marshallers and unmarshallers created by the engine
+         * (bytes, elements and time spent per type). By default, no measure is taken at all.
+         *
+         * @param metrics The metrics to use, for instance {@link StreamingStatistics}
+         * @return The current builder instance
+         */
+        public Builder metrics(@NonNull StreamingMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets if the progress of each marshaller and unmarshaller created by the engine is exposed through JMX
+         * while its stream is open, with a {@link StreamProgressMXBean} registered in the platform MBean server.
+         *
+         * @param monitoring {@code true} to expose the progress of the streams, {@code false} otherwise
+         * @return The current builder instance
+         */
+        public Builder monitoring(boolean monitoring) {
+            this.monitoring = monitoring;
+            return this;
+        }
+
+        /**
+         * Builds the engine, creating the contexts for all the registered types.
+         *
+         * @return The engine created
+         * @throws JAXBException if an error was encountered while creating the contexts
+         */
+        public StreamingEngine build() throws JAXBException {
+            Map<String, Class<?>> names = new HashMap<>();
+            Map<Class<?>, JAXBContext> contexts = new HashMap<>();
+
+            JAXBContext common = context;
+            if (common == null && sharedContext && !types.isEmpty()) {
+                common = contextCache.getContext(types.keySet().toArray(new Class<?>[0]));
+            }
+
+            for (Map.Entry<Class<?>, String> entry : types.entrySet()) {
+                Class<?> type = entry.getKey();
+                names.put(entry.getValue(), type);
+                contexts.put(type, common != null ? common : contextCache.getContext(type));
+            }
+
+            return new StreamingEngine(names, contexts, contextCache, synchronizedStreams, skipUnknown, generatedCodecs, metrics, monitoring);
+        }
+
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.chavaillaz.jaxb.stream;
+
+import jdk.jfr.*;
+
+import java.util.Arrays;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Events of the JDK Flight Recorder emitted by the streaming marshallers and unmarshallers, in the category
+ * {@value #CATEGORY} of the recordings. They allow to attribute the latency spikes of a recording
+ * to the files and element types processed at that time.
+ * <p>
+ * Each event is only created when its type is enabled in a running recording, so that they do not cost
+ * anything (not even reading the clock) when the Flight Recorder is disabled.
+ */
+final class StreamingEvents {
+
+    static final String CATEGORY = "JAXB Stream";
+    static final String READING = "Read";
+    static final String WRITING = "Write";
+
+    private static final EventType STREAM = EventType.getEventType(StreamEvent.class);
+    private static final EventType BATCH = EventType.getEventType(BatchEvent.class);
+    private static final EventType ELEMENT = EventType.getEventType(ElementEvent.class);
+    private static final EventType CONTEXT = EventType.getEventType(ContextEvent.class);
+
+    private StreamingEvents() {
+    }
+
+    /**
+     * Begins the event of a stream opened.
+     *
+     * @param operation The operation done on the stream ({@link #READING} or {@link #WRITING})
+     * @return The event begun, or {@code null} if it is disabled
+     */
+    static StreamEvent beginStream(String operation) {
+        if (!STREAM.isEnabled()) {
+            return null;
+        }
+        StreamEvent event = new StreamEvent();
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins the event of a batch of elements read.
+     *
+     * @return The event begun, or {@code null} if it is disabled
+     */
+    static BatchEvent beginBatch() {
+        if (!BATCH.isEnabled()) {
+            return null;
+        }
+        BatchEvent event = new BatchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins the event of an element read or written.
+     *
+     * @return The event begun, or {@code null} if it is disabled
+     */
+    static ElementEvent beginElement() {
+        if (!ELEMENT.isEnabled()) {
+            return null;
+        }
+        ElementEvent event = new ElementEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins the event of a context creation.
+     *
+     * @return The event begun, or {@code null} if it is disabled
+     */
+    static ContextEvent beginContext() {
+        if (!CONTEXT.isEnabled()) {
+            return null;
+        }
+        ContextEvent event = new ContextEvent();
+        event.begin();
+        return event;
+    }
+
+    @Name("com.chavaillaz.jaxb.stream.Stream")
+    @Label("XML Stream")
+    @Description("XML stream read or written, from its opening to its closing")
+    @Category(CATEGORY)
+    static class StreamEvent extends Event {
+
+        @Label("Operation")
+        String operation;
+
+        @Label("File")
+        @Description("File of the stream, when opened from a file")
+        String file;
+
+        @Label("Size")
+        @Description("Size of the input read, or number of bytes written")
+        @DataAmount
+        long size;
+
+        @Label("Elements")
+        @Description("Number of elements read or written")
+        long elements;
+
+        void complete(long size, long elements) {
+            this.size = size;
+            this.elements = elements;
+            commit();
+        }
+
+    }
+
+    @Name("com.chavaillaz.jaxb.stream.Batch")
+    @Label("Element Batch")
+    @Description("Batch of elements read from an XML stream")
+    @Category(CATEGORY)
+    static class BatchEvent extends Event {
+
+        @Label("Elements")
+        int elements;
+
+        void complete(int elements) {
+            this.elements = elements;
+            commit();
+        }
+
+    }
+
+    @Name("com.chavaillaz.jaxb.stream.Element")
+    @Label("Slow Element")
+    @Description("Element whose unmarshalling or marshalling took longer than the threshold")
+    @Category(CATEGORY)
+    @Threshold("10 ms")
+    static class ElementEvent extends Event {
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Type")
+        Class<?> type;
+
+        @Label("Length")
+        @Description("Number of characters of the element in the stream")
+        long length;
+
+        void complete(String operation, Class<?> type, long length) {
+            end();
+            if (shouldCommit()) {
+                this.operation = operation;
+                this.type = type;
+                this.length = length;
+                commit();
+            }
+        }
+
+    }
+
+    @Name("com.chavaillaz.jaxb.stream.Context")
+    @Label("JAXB Context Creation")
+    @Description("Creation of a JAXB context by a context cache")
+    @Category(CATEGORY)
+    static class ContextEvent extends Event {
+
+        @Label("Types")
+        String types;
+
+        void complete(Class<?>... types) {
+            end();
+            if (shouldCommit()) {
+                this.types = Arrays.stream(types).map(Class::getName).collect(joining(", "));
+                commit();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.chavaillaz.jaxb.stream;
+
+/**
+ * Unchecked exception wrapping the errors encountered while streaming elements,
+ * when they cannot be thrown as checked exceptions (for example from a {@link java.util.stream.Stream}).
+ */
+public class StreamingException extends RuntimeException {
+
+    /**
+     * Creates a new streaming exception.
+     *
+     * @param cause The error encountered while streaming elements
+     */
+    public StreamingException(Throwable cause) {
+        super(cause);
+    }
+
+}
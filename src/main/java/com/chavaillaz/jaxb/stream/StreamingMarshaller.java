@@ -1,16 +1,18 @@
 package com.chavaillaz.jaxb.stream;
 
-import static org.codehaus.stax2.XMLOutputFactory2.P_AUTOMATIC_EMPTY_ELEMENTS;
-import com.ctc.wstx.stax.WstxOutputFactory;
+import com.chavaillaz.jaxb.stream.StreamingEvents.ElementEvent;
+import com.chavaillaz.jaxb.stream.StreamingEvents.StreamEvent;
 import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBElement;
 import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.MarshalException;
 import jakarta.xml.bind.Marshaller;
 import jakarta.xml.bind.annotation.XmlElement;
 import jakarta.xml.bind.annotation.XmlRootElement;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.codehaus.stax2.XMLStreamWriter2;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
@@ -20,7 +22,11 @@ import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
+import static com.chavaillaz.jaxb.stream.StreamingEvents.WRITING;
 import static jakarta.xml.bind.Marshaller.JAXB_FRAGMENT;
 import static java.lang.Boolean.TRUE;
 
@@ -42,13 +48,29 @@ import static java.lang.Boolean.TRUE;
  *     marshaller.write(YourObject.class, new YourObject());
  * </pre>
  * Don't forget to open the stream before trying to write in it.
+ * <p>
+ * The methods of this marshaller are guarded by a lock, so that one instance can be shared by multiple threads.
+ * When it is only used by a single thread, prefer {@link UnsynchronizedStreamingMarshaller} (or an engine built
+ * without synchronized streams), which runs the same code without taking any lock. In both cases,
+ * the {@link StreamingEngine} (holding the contexts and the factories) can be shared between all the marshallers,
+ * used in different threads.
  */
 @Slf4j
 public class StreamingMarshaller implements Closeable {
 
     private final Map<Class<?>, Marshaller> marshallerCache = new HashMap<>();
+    private final Map<Class<?>, ElementCodec<?>> codecs = new ConcurrentHashMap<>();
+    protected final StreamingEngine engine;
     protected final String rootElement;
+    private final Lock lock;
+    private final StreamingMetrics metrics;
+    private final boolean metered;
     protected XMLStreamWriter xmlWriter;
+    private XMLStreamWriter2 locatedWriter;
+    private MeteredOutputStream output;
+    private StreamEvent streamEvent;
+    private StreamProgress progress;
+    private long written;
 
     /**
      * Creates a new streaming marshaller writing elements in the given root element class.
@@ -58,7 +80,7 @@ public class StreamingMarshaller implements Closeable {
      * @throws IllegalArgumentException if the {@link XmlRootElement} annotation is missing for the given type
      */
     public StreamingMarshaller(@NonNull Class<?> type) {
-        this.rootElement = getAnnotation(type, XmlRootElement.class).name();
+        this(getAnnotation(type, XmlRootElement.class).name());
     }
 
     /**
@@ -67,7 +89,35 @@ public class StreamingMarshaller implements Closeable {
      * @param rootElement The root used as XML container where to store the elements to write
      */
     public StreamingMarshaller(@NonNull String rootElement) {
+        this(StreamingEngine.getDefault(), rootElement);
+    }
+
+    /**
+     * Creates a new streaming marshaller writing elements in the given root element,
+     * using the contexts and factories of the given engine.
+     * The engine can be shared between multiple marshallers, used in different threads.
+     *
+     * @param engine      The engine holding the types configuration
+     * @param rootElement The root used as XML container where to store the elements to write
+     */
+    public StreamingMarshaller(@NonNull StreamingEngine engine, @NonNull String rootElement) {
+        this(engine, rootElement, true);
+    }
+
+    /**
+     * Creates a new streaming marshaller writing elements in the given root element,
+     * using the contexts and factories of the given engine and guarding its methods with a lock or not.
+     *
+     * @param engine             The engine holding the types configuration
+     * @param rootElement        The root used as XML container where to store the elements to write
+     * @param synchronizedStream {@code true} to allow sharing the marshaller between threads, {@code false} otherwise
+     */
+    protected StreamingMarshaller(@NonNull StreamingEngine engine, @NonNull String rootElement, boolean synchronizedStream) {
+        this.engine = engine;
         this.rootElement = rootElement;
+        this.lock = synchronizedStream ? new ReentrantLock() : NoLock.INSTANCE;
+        this.metrics = engine.getMetrics();
+        this.metered = metrics != StreamingMetrics.NONE;
     }
 
     protected static <A extends Annotation> A getAnnotation(Class<?> type, Class<A> annotationType) {
@@ -86,15 +136,26 @@ public class StreamingMarshaller implements Closeable {
      * @param outputStream The output stream in which write the XML elements
      * @throws XMLStreamException if an error was encountered while starting the XML document with the root element
      */
-    public synchronized void open(OutputStream outputStream) throws XMLStreamException {
-        if (xmlWriter != null) {
-            close();
-        }
+    public void open(OutputStream outputStream) throws XMLStreamException {
+        lock.lock();
+        try {
+            if (xmlWriter != null) {
+                close();
+            }
 
-        WstxOutputFactory wstxOutputFactory = new WstxOutputFactory();
-        wstxOutputFactory.setProperty(P_AUTOMATIC_EMPTY_ELEMENTS, true);
-        xmlWriter = new IndentingXMLStreamWriter(wstxOutputFactory.createXMLStreamWriter(outputStream, "UTF-8"));
-        createDocumentStart();
+            streamEvent = StreamingEvents.beginStream(WRITING);
+            output = metered || streamEvent != null || engine.isMonitoring() ? new MeteredOutputStream(outputStream, metrics) : null;
+            XMLStreamWriter writer = engine.getOutputFactory().createXMLStreamWriter(output != null ? output : outputStream, "UTF-8");
+            locatedWriter = writer instanceof XMLStreamWriter2 ? (XMLStreamWriter2) writer : null;
+            xmlWriter = new IndentingXMLStreamWriter(writer);
+            if (engine.isMonitoring()) {
+                progress = new StreamProgress(WRITING, output::getCount, -1);
+                progress.register();
+            }
+            createDocumentStart();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -118,7 +179,7 @@ public class StreamingMarshaller implements Closeable {
      * @param <T>    The element type
      * @throws JAXBException if an error was encountered while marshalling the given object
      */
-    public synchronized <T> void write(Class<T> type, T object) throws JAXBException {
+    public <T> void write(Class<T> type, T object) throws JAXBException {
         XmlRootElement annotation = getAnnotation(type, XmlRootElement.class);
         write(type, annotation.name(), object);
     }
@@ -132,9 +193,93 @@ public class StreamingMarshaller implements Closeable {
      * @param <T>    The element type
      * @throws JAXBException if an error was encountered while marshalling the given object
      */
-    public synchronized <T> void write(Class<T> type, String name, T object) throws JAXBException {
-        JAXBElement<T> element = new JAXBElement<>(QName.valueOf(name), type, object);
-        getMarshaller(type).marshal(element, xmlWriter);
+    public <T> void write(Class<T> type, String name, T object) throws JAXBException {
+        lock.lock();
+        try {
+            writeTimed(type, name, object);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the given element, measuring it when metrics or events are enabled.
+     */
+    private <T> void writeTimed(Class<T> type, String name, T object) throws JAXBException {
+        written++;
+        if (progress != null) {
+            progress.setElements(written);
+        }
+        ElementEvent event = StreamingEvents.beginElement();
+        if (!metered && event == null) {
+            writeElement(type, name, object);
+            return;
+        }
+        long start = System.nanoTime();
+        int offset = event != null ? getCharacterOffset() : 0;
+        writeElement(type, name, object);
+        if (metered) {
+            metrics.recordWrite(type, System.nanoTime() - start);
+        }
+        if (event != null) {
+            event.complete(WRITING, type, getCharacterOffset() - offset);
+        }
+    }
+
+    /**
+     * Gets the number of characters written so far, or {@code 0} if the writer does not give its location.
+     */
+    private int getCharacterOffset() {
+        return locatedWriter != null ? locatedWriter.getLocation().getCharacterOffset() : 0;
+    }
+
+    private <T> void writeElement(Class<T> type, String name, T object) throws JAXBException {
+        ElementCodec<T> codec = getCodec(type);
+        if (codec == null) {
+            JAXBElement<T> element = new JAXBElement<>(QName.valueOf(name), type, object);
+            getMarshaller(type).marshal(element, xmlWriter);
+            return;
+        }
+        try {
+            codec.write(xmlWriter, QName.valueOf(name), object);
+        } catch (XMLStreamException e) {
+            throw new MarshalException(e);
+        }
+    }
+
+    /**
+     * Sets the codec to use instead of JAXB to write the elements of its type,
+     * taking precedence over the codec generated for this type if any.
+     *
+     * @param codec The codec handling the elements of its type
+     * @param <T>   The element type
+     */
+    public <T> void setCodec(@NonNull ElementCodec<T> codec) {
+        codecs.put(codec.getType(), codec);
+    }
+
+    /**
+     * Removes the codec set for the given type, so that its elements are handled again by the generated codec
+     * of this type if any, or by JAXB otherwise.
+     *
+     * @param type The element type
+     */
+    public void removeCodec(@NonNull Class<?> type) {
+        codecs.remove(type);
+    }
+
+    /**
+     * Gets the codec to use instead of JAXB for the given type.
+     * It can be called from any thread, even while codecs are set or removed.
+     *
+     * @param type The element type
+     * @param <T>  The element type
+     * @return The codec set for this type, or the codec generated for it, or {@code null} when there is none
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ElementCodec<T> getCodec(Class<T> type) {
+        ElementCodec<T> codec = (ElementCodec<T>) codecs.get(type);
+        return codec != null ? codec : engine.getCodec(type);
     }
 
     /**
@@ -156,13 +301,14 @@ public class StreamingMarshaller implements Closeable {
 
     /**
      * Creates a new marshaller for the given type.
+     * The marshaller is created from the context of the type given by the engine.
      *
      * @param type The type of elements the marshaller has to handle
      * @return The marshaller created, capable of handling the conversion of the given element type
      * @throws JAXBException if an error was encountered while creating the marshaller
      */
     public Marshaller createMarshaller(Class<?> type) throws JAXBException {
-        JAXBContext context = JAXBContext.newInstance(type);
+        JAXBContext context = engine.getContext(type);
         Marshaller marshaller = context.createMarshaller();
         marshaller.setProperty(JAXB_FRAGMENT, TRUE);
         return marshaller;
@@ -172,17 +318,33 @@ public class StreamingMarshaller implements Closeable {
      * Writes the closing tag and closes the stream.
      */
     @Override
-    public synchronized void close() {
+    public void close() {
+        lock.lock();
         try {
-            if (xmlWriter != null) {
-                xmlWriter.writeCharacters("\n");
-                xmlWriter.writeEndDocument();
-                xmlWriter.close();
+            try {
+                if (xmlWriter != null) {
+                    xmlWriter.writeCharacters("\n");
+                    xmlWriter.writeEndDocument();
+                    xmlWriter.close();
+                }
+                if (streamEvent != null) {
+                    streamEvent.complete(output.getCount(), written);
+                }
+            } catch (XMLStreamException e) {
+                log.error("Unable to close XML stream writer", e);
+            } finally {
+                if (progress != null) {
+                    progress.unregister();
+                }
+                xmlWriter = null;
+                locatedWriter = null;
+                output = null;
+                streamEvent = null;
+                progress = null;
+                written = 0;
             }
-        } catch (XMLStreamException e) {
-            log.error("Unable to close XML stream writer", e);
         } finally {
-            xmlWriter = null;
+            lock.unlock();
         }
     }
 
@@ -0,0 +1,75 @@
+package com.chavaillaz.jaxb.stream;
+
+/**
+ * Receiver of the measures taken by the streaming marshallers and unmarshallers, given to the {@link StreamingEngine}.
+ * <p>
+ * It allows to find out if a stream is bound by the I/O, by the parsing or by the binding of the elements,
+ * and can be implemented to forward the measures to any metrics library. All the methods do nothing by default,
+ * and are called by the threads reading and writing the streams (they have to be thread-safe and fast).
+ * See {@link StreamingStatistics} for an implementation keeping the measures in memory.
+ * <p>
+ * When no metrics are given to the engine, the streams do not take any measure.
+ */
+public interface StreamingMetrics {
+
+    /**
+     * Metrics ignoring all the measures, used by default.
+     */
+    StreamingMetrics NONE = new StreamingMetrics() {
+    };
+
+    /**
+     * Records the bytes read from an input.
+     *
+     * @param bytes The number of bytes read
+     */
+    default void recordBytesRead(long bytes) {
+    }
+
+    /**
+     * Records the bytes written to an output.
+     *
+     * @param bytes The number of bytes written
+     */
+    default void recordBytesWritten(long bytes) {
+    }
+
+    /**
+     * Records the time spent by the StAX parser to move from one element to the next, once for each element
+     * of the stream: either to skip the whitespaces and end tags following an element read up to the start tag
+     * of the next one, or to skip (or buffer for a filter) an element that is not read from the stream.
+     *
+     * @param nanos The time spent in nanoseconds
+     */
+    default void recordParsing(long nanos) {
+    }
+
+    /**
+     * Records an element read, with the time spent to unmarshal it (with JAXB or with a codec),
+     * which includes the parsing of its content.
+     *
+     * @param type  The type of the element
+     * @param nanos The time spent in nanoseconds
+     */
+    default void recordRead(Class<?> type, long nanos) {
+    }
+
+    /**
+     * Records an element written, with the time spent to marshal it (with JAXB or with a codec).
+     *
+     * @param type  The type of the element
+     * @param nanos The time spent in nanoseconds
+     */
+    default void recordWrite(Class<?> type, long nanos) {
+    }
+
+    /**
+     * Records the time spent by a consumer given to the unmarshaller to handle an element.
+     *
+     * @param type  The type of the element
+     * @param nanos The time spent in nanoseconds
+     */
+    default void recordConsumer(Class<?> type, long nanos) {
+    }
+
+}
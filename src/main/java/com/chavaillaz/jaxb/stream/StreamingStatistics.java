@@ -0,0 +1,163 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.Getter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Thread-safe {@link StreamingMetrics} keeping in memory the counters and latency histograms of all the streams
+ * of an engine, without any dependency on a metrics library. It can be read at any time, for instance with:
+ * <pre>
+ *     StreamingStatistics statistics = new StreamingStatistics();
+ *     StreamingEngine engine = StreamingEngine.builder()
+ *             .types(DiskMetric.class, MemoryMetric.class)
+ *             .metrics(statistics)
+ *             .build();
+ *     ...
+ *     long p99 = statistics.getType(DiskMetric.class).getReadLatency().getPercentile(99);
+ * </pre>
+ */
+public class StreamingStatistics implements StreamingMetrics {
+
+    private final Map<Class<?>, TypeStatistics> types = new ConcurrentHashMap<>();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LatencyHistogram parsingLatency = new LatencyHistogram();
+
+    @Override
+    public void recordBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    @Override
+    public void recordBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    @Override
+    public void recordParsing(long nanos) {
+        parsingLatency.record(nanos);
+    }
+
+    @Override
+    public void recordRead(Class<?> type, long nanos) {
+        getOrCreate(type).readLatency.record(nanos);
+    }
+
+    @Override
+    public void recordWrite(Class<?> type, long nanos) {
+        getOrCreate(type).writeLatency.record(nanos);
+    }
+
+    @Override
+    public void recordConsumer(Class<?> type, long nanos) {
+        getOrCreate(type).consumerLatency.record(nanos);
+    }
+
+    private TypeStatistics getOrCreate(Class<?> type) {
+        TypeStatistics statistics = types.get(type);
+        return statistics != null ? statistics : types.computeIfAbsent(type, key -> new TypeStatistics());
+    }
+
+    /**
+     * Gets the number of bytes read by all the unmarshallers.
+     *
+     * @return The number of bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Gets the number of bytes written by all the marshallers.
+     *
+     * @return The number of bytes written
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Gets the time spent by the StAX parsers to reach the elements (see {@link #recordParsing(long)}).
+     *
+     * @return The parsing time in nanoseconds
+     */
+    public long getParsingTime() {
+        return parsingLatency.getTotal();
+    }
+
+    /**
+     * Gets the time spent by the StAX parsers to move from each element to the next one,
+     * whose count is the number of elements read or skipped (see {@link #recordParsing(long)}).
+     *
+     * @return The histogram of the parsing time per element
+     */
+    public LatencyHistogram getParsingLatency() {
+        return parsingLatency;
+    }
+
+    /**
+     * Gets the statistics of the given element type.
+     *
+     * @param type The element type
+     * @return The statistics of this type, or {@code null} if no element of this type has been read or written
+     */
+    public TypeStatistics getType(Class<?> type) {
+        return types.get(type);
+    }
+
+    /**
+     * Gets the statistics of all the element types read or written.
+     *
+     * @return The unmodifiable view of the statistics indexed by element type
+     */
+    public Map<Class<?>, TypeStatistics> getTypes() {
+        return unmodifiableMap(types);
+    }
+
+    /**
+     * Statistics of the elements of one type, whose counts are the ones of their histograms.
+     */
+    @Getter
+    public static class TypeStatistics {
+
+        /**
+         * The time spent to unmarshal each element read.
+         */
+        private final LatencyHistogram readLatency = new LatencyHistogram();
+
+        /**
+         * The time spent to marshal each element written.
+         */
+        private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+        /**
+         * The time spent by the consumers to handle each element read.
+         */
+        private final LatencyHistogram consumerLatency = new LatencyHistogram();
+
+        /**
+         * Gets the number of elements read.
+         *
+         * @return The number of elements read
+         */
+        public long getRead() {
+            return readLatency.getCount();
+        }
+
+        /**
+         * Gets the number of elements written.
+         *
+         * @return The number of elements written
+         */
+        public long getWritten() {
+            return writeLatency.getCount();
+        }
+
+    }
+
+}
@@ -1,24 +1,39 @@
 package com.chavaillaz.jaxb.stream;
 
+import com.chavaillaz.jaxb.stream.StreamingEvents.BatchEvent;
+import com.chavaillaz.jaxb.stream.StreamingEvents.ElementEvent;
+import com.chavaillaz.jaxb.stream.StreamingEvents.StreamEvent;
 import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Unmarshaller;
 import jakarta.xml.bind.annotation.XmlElement;
 import jakarta.xml.bind.annotation.XmlRootElement;
+import lombok.NonNull;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.codehaus.stax2.XMLStreamReader2;
 
-import javax.xml.namespace.QName;
-import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
-import java.io.Closeable;
-import java.io.InputStream;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static com.chavaillaz.jaxb.stream.StreamingMarshaller.getAnnotation;
-import static javax.xml.stream.XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES;
-import static javax.xml.stream.XMLInputFactory.SUPPORT_DTD;
+import static com.chavaillaz.jaxb.stream.StreamingEvents.READING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Collections.enumeration;
 import static javax.xml.stream.XMLStreamConstants.*;
 
 /**
@@ -44,13 +59,55 @@ import static javax.xml.stream.XMLStreamConstants.*;
  *     unmarshaller.iterate((type, element) -&gt; doSomething(element));
  * </pre>
  * Don't forget to open the stream before trying to read in it.
+ * <p>
+ * The methods of this unmarshaller are guarded by a lock, so that one instance can be shared by multiple threads
+ * (as done when reading its {@link #stream()} in parallel). When it is only used by a single thread, prefer
+ * {@link UnsynchronizedStreamingUnmarshaller} (or an engine built without synchronized streams), which runs the same
+ * code without taking any lock. In both cases, the {@link StreamingEngine} (holding the types, the contexts
+ * and the factories) can be shared between all the unmarshallers, used in different threads.
  */
 @Slf4j
 public class StreamingUnmarshaller implements Closeable {
 
+    /**
+     * The events to skip at the start of the document, before the root element.
+     */
+    protected static final int DOCUMENT_START_EVENTS = eventMask(START_DOCUMENT, DTD);
+
+    /**
+     * The events to skip after each element, before the next one.
+     */
+    protected static final int ELEMENT_END_EVENTS = eventMask(CHARACTERS, END_ELEMENT);
+
+    /**
+     * The property of the JAXB reference implementation giving the factory creating the element instances.
+     */
+    protected static final String OBJECT_FACTORY_PROPERTY = "org.glassfish.jaxb.core.ObjectFactory";
+
     private final Map<Class<?>, Unmarshaller> unmarshallerCache = new HashMap<>();
-    private final Map<String, Class<?>> mapType = new HashMap<>();
+    private final Map<Class<?>, ElementFilter> filters = new HashMap<>();
+    private final Map<Class<?>, Set<String>> projections = new HashMap<>();
+    private final Map<Class<?>, ElementCodec<?>> codecs = new ConcurrentHashMap<>();
+    private final ProjectingStreamReader projectingReader = new ProjectingStreamReader();
+    private volatile Object objectFactory;
+    protected final StreamingEngine engine;
+    private final Lock lock;
+    private final StreamingMetrics metrics;
+    private final boolean metered;
     private XMLStreamReader xmlReader;
+    private Closeable source;
+    private MeteredInputStream input;
+    private long inputLength = -1;
+    private volatile boolean filtering;
+    private ReplayStreamReader pending;
+    private ReplayStreamReader recorder;
+    private long pendingPosition;
+    private long acceptedOrdinal = -1;
+    private long ordinal;
+    private CheckpointSource checkpointSource;
+    private ByteOffsetMapper offsetMapper;
+    private StreamEvent streamEvent;
+    private StreamProgress progress;
 
     /**
      * Creates a new streaming unmarshaller reading elements from the given types.
@@ -61,11 +118,21 @@ public class StreamingUnmarshaller implements Closeable {
      * @throws JAXBException            if an error was encountered while creating the unmarshaller instances
      */
     public StreamingUnmarshaller(Class<?>... types) throws JAXBException {
-        for (Class<?> type : types) {
-            String key = getAnnotation(type, XmlRootElement.class).name();
-            unmarshallerCache.put(type, createUnmarshaller(type));
-            mapType.put(key, type);
-        }
+        this(null, types);
+    }
+
+    /**
+     * Creates a new streaming unmarshaller reading elements from the given types,
+     * creating the unmarshaller instances from the given context.
+     * Please note that the given classes need the {@link XmlRootElement} annotation.
+     *
+     * @param context The context knowing all the given types, or {@code null} to use one cached context per type
+     * @param types   The list of element types that will be read by the unmarshaller
+     * @throws IllegalArgumentException if the {@link XmlRootElement} annotation is missing for the given types
+     * @throws JAXBException            if an error was encountered while creating the unmarshaller instances
+     */
+    public StreamingUnmarshaller(JAXBContext context, Class<?>... types) throws JAXBException {
+        this(StreamingEngine.builder().context(context).types(types).build());
     }
 
     /**
@@ -77,11 +144,73 @@ public class StreamingUnmarshaller implements Closeable {
      * @throws JAXBException if an error was encountered while creating the unmarshaller instances
      */
     public StreamingUnmarshaller(Map<Class<?>, String> types) throws JAXBException {
-        for (Map.Entry<Class<?>, String> entry : types.entrySet()) {
-            Class<?> type = entry.getKey();
-            unmarshallerCache.put(type, createUnmarshaller(type));
-            mapType.put(entry.getValue(), type);
-        }
+        this(null, types);
+    }
+
+    /**
+     * Creates a new streaming unmarshaller reading elements from the given types,
+     * creating the unmarshaller instances from the given context.
+     * Please note that the {@link Map} has to contain each type with its XML tag name
+     * (equivalent to the value in {@link XmlRootElement} or {@link XmlElement})
+     *
+     * @param context The context knowing all the given types, or {@code null} to use one cached context per type
+     * @param types   The list of elements types with their name that will be read by the unmarshaller
+     * @throws JAXBException if an error was encountered while creating the unmarshaller instances
+     */
+    public StreamingUnmarshaller(JAXBContext context, Map<Class<?>, String> types) throws JAXBException {
+        this(StreamingEngine.builder().context(context).types(types).build());
+    }
+
+    /**
+     * Creates a new streaming unmarshaller reading the element types of the given engine.
+     * The engine can be shared between multiple unmarshallers, used in different threads.
+     *
+     * @param engine The engine holding the types configuration
+     */
+    public StreamingUnmarshaller(@NonNull StreamingEngine engine) {
+        this(engine, true);
+    }
+
+    /**
+     * Creates a new streaming unmarshaller reading the element types of the given engine,
+     * guarding its methods with a lock or not.
+     *
+     * @param engine             The engine holding the types configuration
+     * @param synchronizedStream {@code true} to allow sharing the unmarshaller between threads, {@code false} otherwise
+     */
+    protected StreamingUnmarshaller(@NonNull StreamingEngine engine, boolean synchronizedStream) {
+        this.engine = engine;
+        this.lock = synchronizedStream ? new ReentrantLock() : NoLock.INSTANCE;
+        this.filtering = engine.isSkipUnknown();
+        this.metrics = engine.getMetrics();
+        this.metered = metrics != StreamingMetrics.NONE;
+    }
+
+    /**
+     * Creates a new streaming unmarshaller reading elements from the given types,
+     * with all of them compiled into one single {@link JAXBContext}.
+     * It avoids to reflect several times over the classes shared between the given types.
+     *
+     * @param types The list of element types that will be read by the unmarshaller
+     * @return The streaming unmarshaller created
+     * @throws IllegalArgumentException if the {@link XmlRootElement} annotation is missing for the given types
+     * @throws JAXBException            if an error was encountered while creating the context or the unmarshallers
+     */
+    public static StreamingUnmarshaller withSharedContext(Class<?>... types) throws JAXBException {
+        return new StreamingUnmarshaller(StreamingEngine.builder().sharedContext(true).types(types).build());
+    }
+
+    /**
+     * Creates a new streaming unmarshaller reading elements from the given types,
+     * with all of them compiled into one single {@link JAXBContext}.
+     * It avoids to reflect several times over the classes shared between the given types.
+     *
+     * @param types The list of elements types with their name that will be read by the unmarshaller
+     * @return The streaming unmarshaller created
+     * @throws JAXBException if an error was encountered while creating the context or the unmarshallers
+     */
+    public static StreamingUnmarshaller withSharedContext(Map<Class<?>, String> types) throws JAXBException {
+        return new StreamingUnmarshaller(StreamingEngine.builder().sharedContext(true).types(types).build());
     }
 
     /**
@@ -92,8 +221,13 @@ public class StreamingUnmarshaller implements Closeable {
      * @param inputStream The input stream in which read the XML elements
      * @throws XMLStreamException if an error was encountered while creating the reader or while skipping tags
      */
-    public synchronized void open(InputStream inputStream) throws XMLStreamException {
-        open(inputStream, 1);
+    public void open(InputStream inputStream) throws XMLStreamException {
+        lock.lock();
+        try {
+            open(inputStream, 1);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -106,17 +240,298 @@ public class StreamingUnmarshaller implements Closeable {
      * @param skipDepth   The number of container to skip before reaching the stream of desired elements
      * @throws XMLStreamException if an error was encountered while creating the reader or while skipping tags
      */
-    public synchronized void open(InputStream inputStream, int skipDepth) throws XMLStreamException {
-        if (xmlReader != null) {
-            close();
+    public void open(InputStream inputStream, int skipDepth) throws XMLStreamException {
+        lock.lock();
+        try {
+            if (xmlReader != null) {
+                close();
+            }
+
+            streamEvent = StreamingEvents.beginStream(READING);
+            inputLength = -1;
+            input = new MeteredInputStream(inputStream, metrics);
+            xmlReader = engine.getInputFactory().createXMLStreamReader(input);
+            if (engine.isMonitoring()) {
+                progress = new StreamProgress(READING, input::getCount, inputLength);
+                progress.register();
+            }
+            skipDocumentStart(skipDepth);
+        } finally {
+            lock.unlock();
         }
+    }
 
-        XMLInputFactory factory = XMLInputFactory.newInstance();
-        // Deny all access to external references
-        factory.setProperty(IS_SUPPORTING_EXTERNAL_ENTITIES, false);
-        factory.setProperty(SUPPORT_DTD, false);
-        xmlReader = factory.createXMLStreamReader(inputStream);
-        skipDocumentStart(skipDepth);
+    /**
+     * Opens the given file in which the XML file has to be read, through memory-mapped windows.
+     * It skips the beginning of the document with XML definition and the root element (container tag).
+     * The file is closed when closing the stream.
+     * If an input stream is already open, it closes it before opening the new one.
+     *
+     * @param file The file in which read the XML elements
+     * @throws IOException        if an error was encountered while opening the file
+     * @throws XMLStreamException if an error was encountered while creating the reader or while skipping tags
+     */
+    public void open(Path file) throws IOException, XMLStreamException {
+        lock.lock();
+        try {
+            open(file, 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the given file in which the XML file has to be read, through memory-mapped windows.
+     * It skips the beginning of the document with XML definition and a number of container tags
+     * (putting 1 as {@code skipDepth} corresponds to only skip the root element).
+     * When the file is compressed with gzip, it is decompressed by background threads ahead of the reading
+     * (in parallel for files made of BGZF blocks), in which case checkpoints are not available.
+     * The file is closed when closing the stream.
+     * If an input stream is already open, it closes it before opening the new one.
+     *
+     * @param file      The file in which read the XML elements
+     * @param skipDepth The number of container to skip before reaching the stream of desired elements
+     * @throws IOException        if an error was encountered while opening the file
+     * @throws XMLStreamException if an error was encountered while creating the reader or while skipping tags
+     */
+    public void open(Path file, int skipDepth) throws IOException, XMLStreamException {
+        lock.lock();
+        try {
+            FileChannel channel = FileChannel.open(file, READ);
+            InputStream inputStream;
+            long size;
+            try {
+                if (GzipReadAheadInputStream.isGzip(channel)) {
+                    inputStream = new GzipReadAheadInputStream(channel);
+                    size = -1;
+                } else {
+                    size = channel.size();
+                    inputStream = new MappedInputStream(channel, 0, size, true);
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+
+            open(inputStream, skipDepth, size);
+            describeSource(file);
+            if (size >= 0) {
+                checkpointSource = new CheckpointSource(file, 0, size, new byte[0]);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the given file in which the XML file has to be read, resuming from the given checkpoint.
+     * The reading starts directly at the offset of the checkpoint, with the root element re-synthesized before it,
+     * so that the time to resume does not depend on the number of elements already read.
+     * Please note that it only supports files with the flat layout written by {@link StreamingMarshaller}
+     * (a root element directly containing the stream of elements), encoded in UTF-8 (or ASCII).
+     * If an input stream is already open, it closes it before opening the new one.
+     *
+     * @param file       The file in which read the XML elements
+     * @param checkpoint The checkpoint from which to resume, as given by {@link #checkpoint()}
+     * @throws IOException        if an error was encountered while opening the file
+     * @throws XMLStreamException if an error was encountered while creating the reader or while skipping tags
+     */
+    public void open(Path file, @NonNull Checkpoint checkpoint) throws IOException, XMLStreamException {
+        lock.lock();
+        try {
+            FileRange range = engine.split(file, 1).get(0);
+            long start = Math.max(range.getStart(), Math.min(checkpoint.getOffset(), range.getEnd()));
+            open(new FileRange(file, start, range.getEnd(), range.getHeader(), range.getFooter()));
+            ordinal = checkpoint.getOrdinal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the given channel in which the XML file has to be read, through memory-mapped windows.
+     * It skips the beginning of the document with XML definition and the root element (container tag).
+     * Note that the channel is read from its beginning and is not closed when closing the stream.
+     * If an input stream is already open, it closes it before opening the new one.
+     *
+     * @param channel The channel in which read the XML elements
+     * @throws IOException        if an error was encountered while mapping the channel
+     * @throws XMLStreamException if an error was encountered while creating the reader or while skipping tags
+     */
+    public void open(FileChannel channel) throws IOException, XMLStreamException {
+        lock.lock();
+        try {
+            open(channel, 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the given channel in which the XML file has to be read, through memory-mapped windows.
+     * It skips the beginning of the document with XML definition and a number of container tags
+     * (putting 1 as {@code skipDepth} corresponds to only skip the root element).
+     * Note that the channel is read from its beginning and is not closed when closing the stream.
+     * If an input stream is already open, it closes it before opening the new one.
+     *
+     * @param channel   The channel in which read the XML elements
+     * @param skipDepth The number of container to skip before reaching the stream of desired elements
+     * @throws IOException        if an error was encountered while mapping the channel
+     * @throws XMLStreamException if an error was encountered while creating the reader or while skipping tags
+     */
+    public void open(FileChannel channel, int skipDepth) throws IOException, XMLStreamException {
+        lock.lock();
+        try {
+            open(new MappedInputStream(channel, 0, channel.size(), false), skipDepth, channel.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the given range of a file, in which the XML elements have to be read, through memory-mapped windows.
+     * The root element of the file is re-synthesized around the range, so that it can be read independently
+     * of the other ranges (for example in another thread). The file is closed when closing the stream.
+     * If an input stream is already open, it closes it before opening the new one.
+     *
+     * @param range The range of the file to read, as given by {@link StreamingEngine#split(Path, int)}
+     * @throws IOException        if an error was encountered while opening the file
+     * @throws XMLStreamException if an error was encountered while creating the reader or while skipping tags
+     */
+    public void open(FileRange range) throws IOException, XMLStreamException {
+        lock.lock();
+        try {
+            FileChannel channel = FileChannel.open(range.getFile(), READ);
+            InputStream inputStream;
+            try {
+                inputStream = new SequenceInputStream(enumeration(List.of(
+                        new ByteArrayInputStream(range.getHeader()),
+                        new MappedInputStream(channel, range.getStart(), range.getEnd(), true),
+                        new ByteArrayInputStream(range.getFooter()))));
+            } catch (RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            open(inputStream, 1, range.getHeader().length + range.getLength() + range.getFooter().length);
+            describeSource(range.getFile());
+            checkpointSource = new CheckpointSource(range.getFile(), range.getStart(), range.getEnd(), range.getHeader());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the given input stream owned by this unmarshaller (closed when closing the stream),
+     * closing it if anything goes wrong while opening the stream.
+     */
+    private void open(InputStream inputStream, int skipDepth, long length) throws IOException, XMLStreamException {
+        boolean opened = false;
+        try {
+            open(inputStream, skipDepth);
+            opened = true;
+        } finally {
+            if (!opened) {
+                inputStream.close();
+            }
+        }
+        source = inputStream;
+        inputLength = length;
+        if (progress != null) {
+            progress.setInputLength(length);
+        }
+    }
+
+    /**
+     * Gives the file read to the event and the progress of the stream, if recorded.
+     */
+    private void describeSource(Path file) {
+        if (streamEvent != null) {
+            streamEvent.file = file.toString();
+        }
+        if (progress != null) {
+            progress.describe(file.toString());
+        }
+    }
+
+    /**
+     * Gets the length in bytes of the input currently open, used to estimate the number of elements in the stream.
+     * It is only known for the files, channels and ranges of file opened by this unmarshaller
+     * (corresponding to the size of the file or of the range with its re-synthesized root element).
+     *
+     * @return The input length or {@code -1} if unknown (for other input streams)
+     */
+    public long getInputLength() {
+        return inputLength;
+    }
+
+    /**
+     * Gets the number of bytes read from the input currently open, to compare with {@link #getInputLength()}.
+     * Note that the parser reads the input by blocks, so that it is ahead of the current event by up to a block.
+     *
+     * @return The number of bytes read or {@code -1} if no input is open
+     */
+    long getBytesRead() {
+        MeteredInputStream counter = input;
+        return counter == null ? -1 : counter.getCount();
+    }
+
+    /**
+     * Gets the number of elements read (or skipped) since the beginning of the stream.
+     * When resuming from a checkpoint, it includes the elements read before the checkpoint.
+     *
+     * @return The number of elements read
+     */
+    public long getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Creates a checkpoint of the current position, from which the reading can be resumed later
+     * with {@link #open(Path, Checkpoint)}. It gives the byte offset of the next element and the number
+     * of elements read before it. Note that it is only available for streams opened on a file or a range of file.
+     *
+     * @return The checkpoint of the current position
+     * @throws IllegalStateException if the stream has not been opened on a file
+     * @throws IOException           if an error was encountered while computing the byte offset
+     * @throws XMLStreamException    if an error was encountered while reaching the next element
+     */
+    public Checkpoint checkpoint() throws IOException, XMLStreamException {
+        lock.lock();
+        try {
+            if (checkpointSource == null) {
+                throw new IllegalStateException("Checkpoints are only available for streams opened on a file");
+            }
+
+            long offset;
+            if (!findNext()) {
+                offset = checkpointSource.getEnd();
+            } else {
+                if (offsetMapper == null) {
+                    FileChannel channel = FileChannel.open(checkpointSource.getFile(), READ).position(checkpointSource.getStart());
+                    offsetMapper = new ByteOffsetMapper(new SequenceInputStream(
+                            new ByteArrayInputStream(checkpointSource.getHeader()),
+                            Channels.newInputStream(channel)));
+                }
+                long position = pending != null ? pendingPosition : getPosition();
+                offset = offsetMapper.getByteOffset(position) - checkpointSource.getHeader().length + checkpointSource.getStart();
+            }
+            return new Checkpoint(offset, ordinal);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the current position in the input currently open, as the offset of the current event.
+     * Note that depending on the parser, this offset is given in characters and not in bytes.
+     *
+     * @return The current position or {@code -1} if unknown
+     */
+    public long getPosition() {
+        if (xmlReader instanceof XMLStreamReader2) {
+            return ((XMLStreamReader2) xmlReader).getLocationInfo().getStartingCharOffset();
+        }
+        return xmlReader == null ? -1 : xmlReader.getLocation().getCharacterOffset();
     }
 
     /**
@@ -130,7 +545,7 @@ public class StreamingUnmarshaller implements Closeable {
      */
     protected void skipDocumentStart(int skipDepth) throws XMLStreamException {
         // Ignore headers
-        skipElements(START_DOCUMENT, DTD);
+        skipEvents(DOCUMENT_START_EVENTS);
 
         for (int i = 0; i < skipDepth; ++i) {
             // Ignore root element
@@ -138,33 +553,183 @@ public class StreamingUnmarshaller implements Closeable {
         }
 
         // If there's no tag, ignore root element's end
-        skipElements(END_ELEMENT);
+        skipEvents(eventMask(END_ELEMENT));
     }
 
     /**
      * Skips the given event types.
+     * Prefer {@link #skipEvents(int)} for the operations done for each element, as this method allocates.
      *
      * @param elements The event types to ignore
      * @throws XMLStreamException if an error was encountered while skipping the elements
      */
     protected void skipElements(Integer... elements) throws XMLStreamException {
-        int eventType = xmlReader.getEventType();
+        int mask = 0;
+        for (Integer element : elements) {
+            mask |= 1 << element;
+        }
+        skipEvents(mask);
+    }
 
-        List<Integer> types = Arrays.asList(elements);
-        while (types.contains(eventType)) {
+    /**
+     * Skips the given event types, without any allocation.
+     *
+     * @param mask The event types to ignore, as a bitmask built with {@link #eventMask(int...)}
+     * @throws XMLStreamException if an error was encountered while skipping the elements
+     */
+    protected void skipEvents(int mask) throws XMLStreamException {
+        int eventType = xmlReader.getEventType();
+        while ((mask & (1 << eventType)) != 0) {
             eventType = xmlReader.next();
         }
     }
 
+    /**
+     * Creates the bitmask of the given event types, to be used with {@link #skipEvents(int)}.
+     *
+     * @param eventTypes The event types (as defined in {@link XMLStreamConstants})
+     * @return The bitmask with one bit set for each of the given event types
+     */
+    protected static int eventMask(int... eventTypes) {
+        int mask = 0;
+        for (int eventType : eventTypes) {
+            mask |= 1 << eventType;
+        }
+        return mask;
+    }
+
+    /**
+     * Adds a filter for the elements of the given type, evaluated on the buffered element before unmarshalling it.
+     * The elements rejected by the filter are skipped without being unmarshalled, and the elements accepted are
+     * unmarshalled from the events buffered while testing them, without being parsed again. When multiple filters
+     * are added for the same type, the elements have to be accepted by all of them.
+     *
+     * @param type   The type of elements to filter
+     * @param filter The filter the elements have to match to be unmarshalled
+     */
+    public void addFilter(@NonNull Class<?> type, @NonNull ElementFilter filter) {
+        lock.lock();
+        try {
+            filters.merge(type, filter, ElementFilter::and);
+            filtering = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the projection of the elements of the given type, defining the only direct children to unmarshal.
+     * The other direct children are skipped at the StAX level, without being seen by the JAXB unmarshaller,
+     * leaving the corresponding fields of the elements read with their default value.
+     *
+     * @param type  The type of elements to project
+     * @param names The local names of the direct children to unmarshal, or none to remove the projection
+     */
+    public void setProjection(@NonNull Class<?> type, @NonNull String... names) {
+        lock.lock();
+        try {
+            if (names.length == 0) {
+                projections.remove(type);
+            } else {
+                projections.put(type, Set.of(names));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the codec to use instead of JAXB to read the elements of its type,
+     * taking precedence over the codec generated for this type if any.
+     *
+     * @param codec The codec handling the elements of its type
+     * @param <T>   The element type
+     */
+    public <T> void setCodec(@NonNull ElementCodec<T> codec) {
+        codecs.put(codec.getType(), codec);
+    }
+
+    /**
+     * Removes the codec set for the given type, so that its elements are handled again by the generated codec
+     * of this type if any, or by JAXB otherwise.
+     *
+     * @param type The element type
+     */
+    public void removeCodec(@NonNull Class<?> type) {
+        codecs.remove(type);
+    }
+
+    /**
+     * Gets the codec to use instead of JAXB for the given type.
+     * It can be called from any thread, even while codecs are set or removed.
+     *
+     * @param type The element type
+     * @param <T>  The element type
+     * @return The codec set for this type, or the codec generated for it (unless an object factory is set),
+     * or {@code null} when there is none
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ElementCodec<T> getCodec(Class<T> type) {
+        ElementCodec<T> codec = (ElementCodec<T>) codecs.get(type);
+        if (codec != null || objectFactory != null) {
+            return codec;
+        }
+        return engine.getCodec(type);
+    }
+
+    /**
+     * Sets the factory creating the element instances, for example to take them from an {@link ElementPool}
+     * so that the instances released by the consumer are repopulated instead of allocating new ones.
+     * The factory has to declare a public method {@code createXxx()} without arguments for each type it creates,
+     * the other types being instantiated as usual.
+     * While a factory is set, the codecs generated at compile time are not used, so that all the instances
+     * are created by the factory. Note that the factory is still not used for the types given a codec with
+     * {@link #setCodec(ElementCodec)}.
+     *
+     * @param factory The factory creating the element instances, or {@code null} to remove it
+     * @throws JAXBException if the JAXB implementation does not support object factories
+     */
+    public void setObjectFactory(Object factory) throws JAXBException {
+        lock.lock();
+        try {
+            for (Unmarshaller unmarshaller : unmarshallerCache.values()) {
+                unmarshaller.setProperty(OBJECT_FACTORY_PROPERTY, factory);
+            }
+            objectFactory = factory;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the unmarshaller for the given type.
+     *
+     * @param type The type of elements the unmarshaller has to handle
+     * @return The unmarshaller handling the conversion to the given element type
+     * @throws JAXBException if an error was encountered while creating the unmarshaller
+     */
+    public Unmarshaller getUnmarshaller(Class<?> type) throws JAXBException {
+        Unmarshaller unmarshaller = unmarshallerCache.get(type);
+        if (unmarshaller == null) {
+            unmarshaller = createUnmarshaller(type);
+            if (objectFactory != null) {
+                unmarshaller.setProperty(OBJECT_FACTORY_PROPERTY, objectFactory);
+            }
+            unmarshallerCache.put(type, unmarshaller);
+        }
+        return unmarshaller;
+    }
+
     /**
      * Creates a new unmarshaller for the given type.
+     * The unmarshaller is created from the context of the type given by the engine.
      *
      * @param type The type of elements the unmarshaller has to handle
      * @return The unmarshaller created, capable of handling the conversion to the given element type
      * @throws JAXBException if an error was encountered while creating the unmarshaller
      */
     public Unmarshaller createUnmarshaller(Class<?> type) throws JAXBException {
-        return JAXBContext.newInstance(type).createUnmarshaller();
+        return engine.getContext(type).createUnmarshaller();
     }
 
     /**
@@ -174,16 +739,31 @@ public class StreamingUnmarshaller implements Closeable {
      * @throws XMLStreamException if an error was encountered while detecting the next state
      */
     public Class<?> getNextType() throws XMLStreamException {
-        if (!hasNext()) {
+        lock.lock();
+        try {
+            return nextType();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Class<?> nextType() throws XMLStreamException {
+        if (!findNext()) {
             throw new XMLStreamException("There is no more element to read");
         }
+        if (pending != null) {
+            return pending.getType();
+        }
 
-        return Optional.ofNullable(xmlReader)
-                .map(XMLStreamReader::getName)
-                .map(QName::toString)
-                .map(mapType::get)
-                .orElseThrow(() -> new XMLStreamException("Unknown next type in the stream, " +
-                        "check given ones in constructor or if skipDepth parameter in open method is correct"));
+        Class<?> type = null;
+        if (xmlReader.isStartElement()) {
+            type = engine.getType(xmlReader.getNamespaceURI(), xmlReader.getLocalName());
+        }
+        if (type == null) {
+            throw new XMLStreamException("Unknown next type in the stream, " +
+                    "check given ones in constructor or if skipDepth parameter in open method is correct");
+        }
+        return type;
     }
 
     /**
@@ -196,19 +776,585 @@ public class StreamingUnmarshaller implements Closeable {
      * @throws JAXBException      if there's a mismatch between the given type and the element type read
      * @throws JAXBException      if an error was encountered while unmarshalling the element
      */
-    public synchronized <T> T next(Class<T> type) throws JAXBException, XMLStreamException {
-        Class<?> nextType = getNextType();
-        if (type == null || !type.equals(nextType)) {
-            throw new JAXBException("Mismatch between next type " + nextType + " and given type " + type);
+    public <T> T next(Class<T> type) throws JAXBException, XMLStreamException {
+        lock.lock();
+        try {
+            Class<?> nextType = nextType();
+            if (type == null || !type.equals(nextType)) {
+                throw new JAXBException("Mismatch between next type " + nextType + " and given type " + type);
+            }
+
+            return unmarshalNext(type);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unmarshals the current element of the stream and skips the following whitespaces and end tags.
+     */
+    private <T> T unmarshalNext(Class<T> type) throws JAXBException, XMLStreamException {
+        ElementCodec<T> codec = getCodec(type);
+        return unmarshalNext(type, codec, codec == null ? getUnmarshaller(type) : null);
+    }
+
+    /**
+     * Unmarshals the current element of the stream with the given codec, or with the given unmarshaller
+     * if there is no codec, and skips the following whitespaces and end tags.
+     */
+    private <T> T unmarshalNext(Class<T> type, ElementCodec<T> codec, Unmarshaller unmarshaller) throws JAXBException, XMLStreamException {
+        ordinal++;
+        if (progress != null) {
+            progress.setElements(ordinal);
+        }
+        if (pending != null) {
+            ReplayStreamReader recorded = takePending();
+            T value = unmarshal(project(recorded.rewind(), type), type, codec, unmarshaller);
+            recorder = recorded;
+            return value;
         }
 
-        Unmarshaller unmarshaller = unmarshallerCache.get(type);
-        T value = unmarshaller.unmarshal(xmlReader, type).getValue();
+        T value = unmarshal(project(xmlReader, type), type, codec, unmarshaller);
+        moveToNextElement();
+        return value;
+    }
+
+    /**
+     * Unmarshals the element on which the given reader is positioned, with the codec of its type if there is one
+     * or with JAXB otherwise, leaving the reader on the event following the end tag of the element.
+     */
+    private <T> T unmarshal(XMLStreamReader reader, Class<T> type, ElementCodec<T> codec, Unmarshaller unmarshaller) throws JAXBException, XMLStreamException {
+        ElementEvent event = StreamingEvents.beginElement();
+        if (!metered && event == null) {
+            return unmarshalElement(reader, type, codec, unmarshaller);
+        }
+        long start = System.nanoTime();
+        int offset = event != null ? reader.getLocation().getCharacterOffset() : 0;
+        T value = unmarshalElement(reader, type, codec, unmarshaller);
+        if (metered) {
+            metrics.recordRead(type, System.nanoTime() - start);
+        }
+        if (event != null) {
+            event.complete(READING, type, reader.getLocation().getCharacterOffset() - offset);
+        }
+        return value;
+    }
 
-        skipElements(CHARACTERS, END_ELEMENT);
+    private static <T> T unmarshalElement(XMLStreamReader reader, Class<T> type, ElementCodec<T> codec, Unmarshaller unmarshaller) throws JAXBException, XMLStreamException {
+        if (codec == null) {
+            return unmarshaller.unmarshal(reader, type).getValue();
+        }
+        T value = codec.read(reader);
+        reader.next();
         return value;
     }
 
+    /**
+     * Gets the reader to give to the JAXB unmarshaller, only exposing the projected children of the given type if any.
+     */
+    private XMLStreamReader project(XMLStreamReader reader, Class<?> type) {
+        Set<String> names = projections.get(type);
+        return names == null ? reader : projectingReader.reset(reader, names);
+    }
+
+    /**
+     * Takes the element recorded and accepted by a filter, to be read instead of the current element of the stream.
+     */
+    private ReplayStreamReader takePending() {
+        ReplayStreamReader recorded = pending;
+        pending = null;
+        return recorded;
+    }
+
+    /**
+     * Reads a batch of elements from the stream, giving them to the given consumer.
+     * The bookkeeping (lock, type and codec or unmarshaller resolution) is done once for the whole batch or once for
+     * each run of elements of the same type, which reduces the overhead per element when reading small elements.
+     *
+     * @param max      The maximum number of elements to read
+     * @param consumer The consumer called for each element read
+     * @return The number of elements read (less than {@code max} only if the end of the stream has been reached)
+     * @throws XMLStreamException if an error was encountered while reading the stream
+     * @throws JAXBException      if an error was encountered while unmarshalling an element
+     */
+    @SuppressWarnings("unchecked")
+    public int nextBatch(int max, BiConsumer<Class<?>, Object> consumer) throws JAXBException, XMLStreamException {
+        lock.lock();
+        try {
+            BatchEvent event = StreamingEvents.beginBatch();
+            String localName = null;
+            String namespace = null;
+            Class<Object> type = null;
+            ElementCodec<Object> codec = null;
+            Unmarshaller unmarshaller = null;
+
+            int count = 0;
+            while (count < max && findNext()) {
+                if (type == null || pending != null || !xmlReader.isStartElement() || !xmlReader.getLocalName().equals(localName) || !Objects.equals(xmlReader.getNamespaceURI(), namespace)) {
+                    type = (Class<Object>) nextType();
+                    localName = pending == null ? xmlReader.getLocalName() : null;
+                    namespace = pending == null ? xmlReader.getNamespaceURI() : null;
+                    codec = getCodec(type);
+                    unmarshaller = codec == null ? getUnmarshaller(type) : null;
+                }
+                accept(consumer, type, unmarshalNext(type, codec, unmarshaller));
+                count++;
+            }
+            if (event != null) {
+                event.complete(count);
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives the given element to the consumer, measuring the time it spends when metrics are enabled.
+     */
+    private void accept(BiConsumer<Class<?>, Object> consumer, Class<?> type, Object element) {
+        if (!metered) {
+            consumer.accept(type, element);
+            return;
+        }
+        long start = System.nanoTime();
+        consumer.accept(type, element);
+        metrics.recordConsumer(type, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads a batch of elements from the stream, adding them to the given collection.
+     * See {@link #nextBatch(int, BiConsumer)} for more details.
+     *
+     * @param collection The collection in which the elements read are added
+     * @param max        The maximum number of elements to read
+     * @return The number of elements read (less than {@code max} only if the end of the stream has been reached)
+     * @throws XMLStreamException if an error was encountered while reading the stream
+     * @throws JAXBException      if an error was encountered while unmarshalling an element
+     */
+    public int drainTo(Collection<Object> collection, int max) throws JAXBException, XMLStreamException {
+        return nextBatch(max, (type, element) -> collection.add(element));
+    }
+
+    /**
+     * Reads a batch of elements of the given type from the stream, adding them to the given collection.
+     * The elements of other types are skipped without being unmarshalled.
+     * See {@link #nextBatch(int, BiConsumer)} for more details.
+     *
+     * @param type       The type of elements to read
+     * @param collection The collection in which the elements read are added
+     * @param max        The maximum number of elements to read
+     * @param <T>        The element type
+     * @return The number of elements read (less than {@code max} only if the end of the stream has been reached)
+     * @throws XMLStreamException if an error was encountered while reading the stream
+     * @throws JAXBException      if an error was encountered while unmarshalling an element
+     */
+    public <T> int drainTo(@NonNull Class<T> type, @NonNull Collection<? super T> collection, int max) throws JAXBException, XMLStreamException {
+        lock.lock();
+        try {
+            BatchEvent event = StreamingEvents.beginBatch();
+            int count = 0;
+            while (count < max && findNext()) {
+                Class<?> nextType = nextType();
+                if (type.equals(nextType)) {
+                    collection.add(type.cast(unmarshalNext(nextType)));
+                    count++;
+                } else {
+                    skipCurrent();
+                }
+            }
+            if (event != null) {
+                event.complete(count);
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the next element from the stream, whatever its type.
+     *
+     * @return The element read from the stream
+     * @throws XMLStreamException if there's no more element to read
+     * @throws JAXBException      if an error was encountered while unmarshalling the element
+     */
+    public Object next() throws JAXBException, XMLStreamException {
+        lock.lock();
+        try {
+            return unmarshalNext(nextType());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the next element of the given type from the stream, skipping the elements of other types.
+     *
+     * @param type The type of element to read, or {@link Object} to read the next element whatever its type
+     * @param <T>  The element type
+     * @return The element read or {@code null} if the end of the stream has been reached
+     * @throws XMLStreamException if an error was encountered while reading the stream
+     * @throws JAXBException      if an error was encountered while unmarshalling the element
+     */
+    <T> T readNext(Class<T> type) throws JAXBException, XMLStreamException {
+        lock.lock();
+        try {
+            while (findNext()) {
+                Class<?> nextType = nextType();
+                if (type == Object.class || type.equals(nextType)) {
+                    return type.cast(unmarshalNext(nextType));
+                }
+                skipCurrent();
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Skips the next element from the stream, without unmarshalling it.
+     *
+     * @throws XMLStreamException if there's no more element to read
+     * @throws XMLStreamException if an error was encountered while skipping the element
+     */
+    public void skipNext() throws XMLStreamException {
+        lock.lock();
+        try {
+            if (!findNext()) {
+                throw new XMLStreamException("There is no more element to read");
+            }
+            skipCurrent();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Skips the element found by {@link #findNext()} and the following whitespaces and end tags.
+     */
+    private void skipCurrent() throws XMLStreamException {
+        ordinal++;
+        if (pending != null) {
+            pending = null;
+            return;
+        }
+
+        skipCurrentElement();
+    }
+
+    /**
+     * Skips the current element and the following whitespaces and end tags, up to the next element.
+     * It is measured as parsing when metrics are enabled.
+     */
+    private void skipCurrentElement() throws XMLStreamException {
+        long start = metered ? System.nanoTime() : 0;
+        skipElement();
+        skipEvents(ELEMENT_END_EVENTS);
+        recordParsing(start);
+    }
+
+    /**
+     * Skips the whitespaces and end tags following the element just read, up to the next element.
+     * It is measured as parsing when metrics are enabled.
+     */
+    private void moveToNextElement() throws XMLStreamException {
+        long start = metered ? System.nanoTime() : 0;
+        skipEvents(ELEMENT_END_EVENTS);
+        recordParsing(start);
+    }
+
+    private void recordParsing(long start) {
+        if (metered) {
+            metrics.recordParsing(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Skips the current element (with all its children), without reading its content.
+     * The reader is left on the event following the end of the element.
+     *
+     * @throws XMLStreamException if an error was encountered while skipping the element
+     */
+    protected void skipElement() throws XMLStreamException {
+        if (xmlReader instanceof XMLStreamReader2) {
+            ((XMLStreamReader2) xmlReader).skipElement();
+            xmlReader.next();
+            return;
+        }
+
+        int depth = 0;
+        do {
+            int eventType = xmlReader.getEventType();
+            if (eventType == START_ELEMENT) {
+                depth++;
+            } else if (eventType == END_ELEMENT) {
+                depth--;
+            }
+            xmlReader.next();
+        } while (depth > 0);
+    }
+
+    /**
+     * Skips the next element from the stream without unmarshalling it,
+     * capturing its attributes and the text of its direct children.
+     *
+     * @return The element captured
+     * @throws XMLStreamException if there's no more element to read
+     * @throws XMLStreamException if an error was encountered while reading the element
+     */
+    BufferedElement nextBuffered() throws XMLStreamException {
+        lock.lock();
+        try {
+            nextType();
+            ordinal++;
+            if (pending != null) {
+                ReplayStreamReader recorded = takePending();
+                BufferedElement element = captureElement(recorded.rewind());
+                recorder = recorded;
+                return element;
+            }
+
+            BufferedElement element = captureElement(xmlReader);
+            moveToNextElement();
+            return element;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Captures the attributes and the text of the direct children of the current element of the given reader.
+     * The reader is left on the event following the end of the element.
+     */
+    private static BufferedElement captureElement(XMLStreamReader reader) throws XMLStreamException {
+        BufferedElement element = new BufferedElement(reader.getLocalName());
+        StringBuilder childText = new StringBuilder();
+        int depth = 0;
+        do {
+            int eventType = reader.getEventType();
+            if (eventType == START_ELEMENT) {
+                depth++;
+            }
+            captureEvent(reader, depth, element, childText);
+            if (eventType == END_ELEMENT) {
+                depth--;
+            }
+            reader.next();
+        } while (depth > 0);
+        return element;
+    }
+
+    /**
+     * Captures the current event of the given reader, when it concerns the attributes of the element
+     * or the text of its direct children.
+     *
+     * @param reader    The reader positioned on the event to capture
+     * @param depth     The depth of the event in the element (1 for the element itself)
+     * @param element   The element in which the attributes and child texts are captured
+     * @param childText The text of the current direct child
+     */
+    private static void captureEvent(XMLStreamReader reader, int depth, BufferedElement element, StringBuilder childText) {
+        switch (reader.getEventType()) {
+            case START_ELEMENT:
+                if (depth == 1) {
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        element.addAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                    }
+                } else if (depth == 2) {
+                    childText.setLength(0);
+                }
+                break;
+            case END_ELEMENT:
+                if (depth == 2) {
+                    element.addChildText(reader.getLocalName(), childText.toString());
+                }
+                break;
+            case CHARACTERS:
+            case CDATA:
+            case SPACE:
+                if (depth == 2) {
+                    childText.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reads the next element from the stream as a raw XML fragment, without unmarshalling it.
+     * The fragment can then be unmarshalled later, for example by another thread.
+     *
+     * @return The fragment containing the next element of the stream
+     * @throws XMLStreamException if there's no more element to read
+     * @throws XMLStreamException if an error was encountered while copying the element
+     */
+    public ElementFragment nextFragment() throws XMLStreamException {
+        lock.lock();
+        try {
+            Class<?> type = nextType();
+            ordinal++;
+            if (pending != null) {
+                ReplayStreamReader recorded = takePending();
+                ElementFragment fragment = bufferElement(type, recorded.rewind());
+                recorder = recorded;
+                return fragment;
+            }
+            ElementFragment fragment = bufferElement(type, xmlReader);
+            xmlReader.next();
+            moveToNextElement();
+            return fragment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the next element from the stream into a new replayable reader, without unmarshalling it,
+     * so that it can be unmarshalled later by another thread without being serialized and parsed again.
+     *
+     * @return The reader positioned on the start tag of the next element of the stream
+     * @throws XMLStreamException if there's no more element to read
+     * @throws XMLStreamException if an error was encountered while recording the element
+     */
+    ReplayStreamReader nextRecord() throws XMLStreamException {
+        lock.lock();
+        try {
+            Class<?> type = nextType();
+            ordinal++;
+            if (pending != null) {
+                return takePending().rewind();
+            }
+            long start = metered ? System.nanoTime() : 0;
+            ReplayStreamReader recording = new ReplayStreamReader();
+            recording.clear(type);
+            recordElement(recording, null);
+            recording.recordContext(xmlReader);
+            xmlReader.next();
+            skipEvents(ELEMENT_END_EVENTS);
+            recordParsing(start);
+            return recording.rewind();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies the element on which the given reader is positioned into a fragment.
+     * The reader is left on the end tag of the element.
+     *
+     * @param type   The type of the element
+     * @param reader The reader positioned on the start tag of the element
+     */
+    private ElementFragment bufferElement(Class<?> type, XMLStreamReader reader) throws XMLStreamException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XMLStreamWriter writer = engine.getFragmentFactory().createXMLStreamWriter(output, "UTF-8");
+        copyElement(reader, writer);
+        writer.close();
+        return new ElementFragment(type, output.toByteArray());
+    }
+
+    /**
+     * Copies the current element (with all its children) to the given writer.
+     * The reader is left on the event following the end of the element.
+     *
+     * @param writer The writer in which the element has to be copied
+     * @throws XMLStreamException if an error was encountered while copying the element
+     */
+    protected void copyElement(XMLStreamWriter writer) throws XMLStreamException {
+        copyElement(xmlReader, writer);
+        xmlReader.next();
+    }
+
+    /**
+     * Copies the element on which the given reader is positioned (with all its children) to the given writer.
+     * The reader is left on the end tag of the element.
+     */
+    private static void copyElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        int depth = 0;
+        while (true) {
+            int eventType = reader.getEventType();
+            copyEvent(reader, writer);
+            if (eventType == START_ELEMENT) {
+                depth++;
+            } else if (eventType == END_ELEMENT && --depth == 0) {
+                return;
+            }
+            reader.next();
+        }
+    }
+
+    /**
+     * Records the current element (with all its children) in the given recorder, capturing its attributes
+     * and the text of its direct children in the given element (if not {@code null}).
+     * The reader is left on the end tag of the element,
+     * so that the namespace context of the element can still be recorded if needed.
+     */
+    private void recordElement(ReplayStreamReader recorder, BufferedElement capture) throws XMLStreamException {
+        StringBuilder childText = capture != null ? new StringBuilder() : null;
+        int depth = 0;
+        while (true) {
+            int eventType = xmlReader.getEventType();
+            if (eventType == START_ELEMENT) {
+                depth++;
+            }
+            recorder.record(xmlReader);
+            if (capture != null) {
+                captureEvent(xmlReader, depth, capture, childText);
+            }
+            if (eventType == END_ELEMENT && --depth == 0) {
+                return;
+            }
+            xmlReader.next();
+        }
+    }
+
+    /**
+     * Copies the current event of the given reader to the given writer.
+     *
+     * @param reader The reader positioned on the event to copy
+     * @param writer The writer in which the event has to be copied
+     * @throws XMLStreamException if an error was encountered while copying the event
+     */
+    static void copyEvent(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        switch (reader.getEventType()) {
+            case START_ELEMENT:
+                writer.writeStartElement(valueOf(reader.getPrefix()), reader.getLocalName(), valueOf(reader.getNamespaceURI()));
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    writer.writeNamespace(valueOf(reader.getNamespacePrefix(i)), valueOf(reader.getNamespaceURI(i)));
+                }
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    writer.writeAttribute(valueOf(reader.getAttributePrefix(i)), valueOf(reader.getAttributeNamespace(i)),
+                            reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                }
+                break;
+            case END_ELEMENT:
+                writer.writeEndElement();
+                break;
+            case CHARACTERS:
+            case SPACE:
+                writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            case CDATA:
+                writer.writeCData(reader.getText());
+                break;
+            case COMMENT:
+                writer.writeComment(reader.getText());
+                break;
+            case PROCESSING_INSTRUCTION:
+                writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static String valueOf(String value) {
+        return value == null ? "" : value;
+    }
+
     /**
      * Indicates if there is one more element to read in the stream.
      *
@@ -216,7 +1362,83 @@ public class StreamingUnmarshaller implements Closeable {
      * @throws XMLStreamException if an error was encountered while detecting the next state
      */
     public boolean hasNext() throws XMLStreamException {
-        return xmlReader.hasNext();
+        if (!filtering) {
+            // Nothing to skip before the next element, no need to take the lock
+            return xmlReader.hasNext();
+        }
+        lock.lock();
+        try {
+            return findNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indicates if there is one more element to read in the stream.
+     * When the engine skips unknown elements, they are skipped until reaching an element of a known type.
+     * When a filter is defined for the type of the next element, it is buffered and skipped if not accepted.
+     */
+    private boolean findNext() throws XMLStreamException {
+        if (!engine.isSkipUnknown() && filters.isEmpty()) {
+            return xmlReader.hasNext();
+        }
+
+        while (pending == null && xmlReader.isStartElement()) {
+            Class<?> type = engine.getType(xmlReader.getNamespaceURI(), xmlReader.getLocalName());
+            ElementFilter filter = type != null ? filters.get(type) : null;
+            if (type == null && engine.isSkipUnknown()) {
+                ordinal++;
+                skipCurrentElement();
+            } else if (filter instanceof AttributeFilter) {
+                if (acceptedOrdinal == ordinal || filter.test(captureAttributes())) {
+                    // Read directly from the stream, remembering the decision until the element is read
+                    acceptedOrdinal = ordinal;
+                    break;
+                }
+                ordinal++;
+                skipCurrentElement();
+            } else if (filter != null) {
+                recordFiltered(type, filter);
+            } else {
+                break;
+            }
+        }
+        return pending != null || xmlReader.hasNext();
+    }
+
+    /**
+     * Captures the attributes of the current element, leaving the reader on its start tag.
+     */
+    private BufferedElement captureAttributes() {
+        BufferedElement element = new BufferedElement(xmlReader.getLocalName());
+        captureEvent(xmlReader, 1, element, null);
+        return element;
+    }
+
+    /**
+     * Records the current element while capturing it for the given filter, and keeps it as pending if accepted.
+     * The recording buffers are reused for the next element when it is rejected, without having serialized it.
+     */
+    private void recordFiltered(Class<?> type, ElementFilter filter) throws XMLStreamException {
+        long start = metered ? System.nanoTime() : 0;
+        ReplayStreamReader recording = recorder != null ? recorder : new ReplayStreamReader();
+        recorder = null;
+        recording.clear(type);
+        BufferedElement element = new BufferedElement(xmlReader.getLocalName());
+        long position = getPosition();
+        recordElement(recording, element);
+        if (filter.test(element)) {
+            recording.recordContext(xmlReader);
+            pending = recording;
+            pendingPosition = position;
+        } else {
+            ordinal++;
+            recorder = recording;
+        }
+        xmlReader.next();
+        skipEvents(ELEMENT_END_EVENTS);
+        recordParsing(start);
     }
 
     /**
@@ -229,24 +1451,131 @@ public class StreamingUnmarshaller implements Closeable {
     public void iterate(BiConsumer<Class<?>, Object> consumer) throws JAXBException, XMLStreamException {
         while (hasNext()) {
             Class<?> type = getNextType();
-            consumer.accept(type, next(type));
+            accept(consumer, type, next(type));
         }
     }
 
+    /**
+     * Gets a lazily evaluated stream of all the elements.
+     * The stream can be used in parallel, in which case elements are read by batches from this unmarshaller.
+     * Note that the errors encountered while reading are thrown as {@link StreamingException}.
+     *
+     * @return The stream of elements
+     */
+    public Stream<Object> stream() {
+        return stream(Object.class);
+    }
+
+    /**
+     * Gets a lazily evaluated stream of the elements of the given type.
+     * The elements of other types are skipped without being unmarshalled.
+     * The stream can be used in parallel, in which case elements are read by batches from this unmarshaller.
+     * Note that the errors encountered while reading are thrown as {@link StreamingException}.
+     *
+     * @param type The type of elements to read, or {@link Object} to read all of them
+     * @param <T>  The element type
+     * @return The stream of elements
+     */
+    public <T> Stream<T> stream(@NonNull Class<T> type) {
+        return StreamSupport.stream(new ElementSpliterator<>(this, type), false);
+    }
+
+    /**
+     * Gets a publisher of all the elements, reading them only when requested by the subscriber.
+     * See {@link #publisher(Class, Executor)} for more details.
+     *
+     * @param executor The executor in which the elements are read and given to the subscriber
+     * @return The publisher of elements
+     */
+    public Flow.Publisher<Object> publisher(Executor executor) {
+        return publisher(Object.class, executor);
+    }
+
+    /**
+     * Gets a publisher of the elements of the given type, reading them only when requested by the subscriber
+     * (the elements of other types are skipped without being unmarshalled).
+     * The elements are read and given to the subscriber in the given executor, by batches in order to let
+     * the other tasks of the executor run (so that one executor can serve many streams).
+     * Note that the publisher accepts only one subscriber, and closes this unmarshaller when the stream is
+     * completed, failed or cancelled.
+     *
+     * @param type     The type of elements to read, or {@link Object} to read all of them
+     * @param executor The executor in which the elements are read and given to the subscriber
+     * @param <T>      The element type
+     * @return The publisher of elements
+     */
+    public <T> Flow.Publisher<T> publisher(@NonNull Class<T> type, @NonNull Executor executor) {
+        return new ElementPublisher<>(this, type, executor);
+    }
+
     /**
      * Closes the stream.
      */
     @Override
-    public synchronized void close() {
+    public void close() {
+        lock.lock();
         try {
-            if (xmlReader != null) {
-                xmlReader.close();
+            if (streamEvent != null) {
+                streamEvent.complete(inputLength, ordinal);
+            }
+            if (progress != null) {
+                progress.unregister();
+            }
+            try {
+                if (xmlReader != null) {
+                    xmlReader.close();
+                }
+                if (source != null) {
+                    source.close();
+                }
+                if (offsetMapper != null) {
+                    offsetMapper.close();
+                }
+            } catch (XMLStreamException | IOException e) {
+                log.error("Unable to close XML stream reader", e);
+            } finally {
+                xmlReader = null;
+                source = null;
+                input = null;
+                pending = null;
+                acceptedOrdinal = -1;
+                ordinal = 0;
+                checkpointSource = null;
+                offsetMapper = null;
+                streamEvent = null;
+                progress = null;
             }
-        } catch (XMLStreamException e) {
-            log.error("Unable to close XML stream reader", e);
         } finally {
-            xmlReader = null;
+            lock.unlock();
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * File (or range of file) currently read, allowing to create checkpoints.
+     */
+    @Value
+    private static class CheckpointSource {
+
+        /**
+         * The file read
+         */
+        Path file;
+
+        /**
+         * The offset in the file corresponding to the first byte after the header
+         */
+        long start;
+
+        /**
+         * The offset in the file where the stream of elements ends
+         */
+        long end;
+
+        /**
+         * The bytes synthesized before the start offset
+         */
+        byte[] header;
+
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.NonNull;
+
+/**
+ * Streaming marshaller writing the elements without taking any lock, to be used by one single thread at a time.
+ * <p>
+ * It runs the same code as {@link StreamingMarshaller}, but without the lock acquisition for each element written,
+ * which is noticeable when writing a large number of small elements. As none of its methods are guarded,
+ * it must not be shared between threads.
+ * <p>
+ * The {@link StreamingEngine} given remains safe to share between multiple marshallers, used in different threads.
+ */
+public class UnsynchronizedStreamingMarshaller extends StreamingMarshaller {
+
+    /**
+     * Creates a new unsynchronized streaming marshaller writing elements in the given root element,
+     * using the contexts and factories of the given engine.
+     *
+     * @param engine      The engine holding the types configuration
+     * @param rootElement The root used as XML container where to store the elements to write
+     */
+    public UnsynchronizedStreamingMarshaller(@NonNull StreamingEngine engine, @NonNull String rootElement) {
+        super(engine, rootElement, false);
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.chavaillaz.jaxb.stream;
+
+import lombok.NonNull;
+
+/**
+ * Streaming unmarshaller reading the elements without taking any lock, to be used by one single thread at a time.
+ * <p>
+ * It runs the same code as {@link StreamingUnmarshaller}, but without the lock acquisition for each element read,
+ * which is noticeable when reading a large number of small elements. As none of its methods are guarded,
+ * it must not be shared between threads (including by reading its stream in parallel).
+ * <p>
+ * The {@link StreamingEngine} given remains safe to share between multiple unmarshallers, used in different threads.
+ */
+public class UnsynchronizedStreamingUnmarshaller extends StreamingUnmarshaller {
+
+    /**
+     * Creates a new unsynchronized streaming unmarshaller reading the element types of the given engine.
+     *
+     * @param engine The engine holding the types configuration
+     */
+    public UnsynchronizedStreamingUnmarshaller(@NonNull StreamingEngine engine) {
+        super(engine, false);
+    }
+
+}
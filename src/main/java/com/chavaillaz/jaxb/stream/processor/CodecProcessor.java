@@ -0,0 +1,479 @@
+package com.chavaillaz.jaxb.stream.processor;
+
+import lombok.Value;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor generating an {@link com.chavaillaz.jaxb.stream.ElementCodec ElementCodec} for each flat
+ * JAXB class, reading and writing its elements with straight-line StAX code instead of the reflective JAXB binding.
+ * <p>
+ * A codec named {@code <ClassName>_Codec} is generated in the package of each class annotated with
+ * {@code @XmlRootElement} and {@code @XmlAccessorType(FIELD)}, whose fields are only bound with {@code @XmlElement}
+ * or {@code @XmlAttribute} (or without annotation) to simple values (strings, primitives, their wrappers,
+ * {@link java.math.BigDecimal} and {@link java.math.BigInteger}), without namespace. The other classes are left
+ * to JAXB, with a note giving the reason.
+ * <p>
+ * It is registered in the separate artifact of this library with the classifier {@code processor}, which has to be
+ * added explicitly to the annotation processor path of the compiler (it is not discovered from the library itself).
+ * The codecs generated are then only used by the engines built with generated codecs enabled.
+ */
+@SupportedAnnotationTypes(CodecProcessor.XML_ROOT_ELEMENT)
+public class CodecProcessor extends AbstractProcessor {
+
+    /**
+     * The suffix of the name of the generated codecs.
+     */
+    public static final String CODEC_SUFFIX = "_Codec";
+
+    static final String XML_ROOT_ELEMENT = "jakarta.xml.bind.annotation.XmlRootElement";
+    private static final String XML_ANNOTATIONS = "jakarta.xml.bind.annotation.";
+    private static final String XML_ACCESSOR_TYPE = XML_ANNOTATIONS + "XmlAccessorType";
+    private static final String XML_TYPE = XML_ANNOTATIONS + "XmlType";
+    private static final String XML_SCHEMA = XML_ANNOTATIONS + "XmlSchema";
+    private static final String XML_ELEMENT = XML_ANNOTATIONS + "XmlElement";
+    private static final String XML_ATTRIBUTE = XML_ANNOTATIONS + "XmlAttribute";
+    private static final String XML_TRANSIENT = XML_ANNOTATIONS + "XmlTransient";
+    private static final String DEFAULT_NAME = "##default";
+    private static final Map<String, ValueType> VALUE_TYPES = new HashMap<>();
+
+    static {
+        VALUE_TYPES.put("java.lang.String", new ValueType("%s", "%s"));
+        VALUE_TYPES.put("java.math.BigDecimal", new ValueType("CodecSupport.parseDecimal(%s)", "CodecSupport.printDecimal(%s)"));
+        VALUE_TYPES.put("java.math.BigInteger", new ValueType("CodecSupport.parseInteger(%s)", "%s.toString()"));
+        addPrimitive("boolean", "java.lang.Boolean", "CodecSupport.parseBoolean(%s)", "String.valueOf(%s)");
+        addPrimitive("byte", "java.lang.Byte", "CodecSupport.parseByte(%s)", "String.valueOf(%s)");
+        addPrimitive("short", "java.lang.Short", "CodecSupport.parseShort(%s)", "String.valueOf(%s)");
+        addPrimitive("int", "java.lang.Integer", "CodecSupport.parseInt(%s)", "String.valueOf(%s)");
+        addPrimitive("long", "java.lang.Long", "CodecSupport.parseLong(%s)", "String.valueOf(%s)");
+        addPrimitive("float", "java.lang.Float", "CodecSupport.parseFloat(%s)", "CodecSupport.printFloat(%s)");
+        addPrimitive("double", "java.lang.Double", "CodecSupport.parseDouble(%s)", "CodecSupport.printDouble(%s)");
+    }
+
+    private static void addPrimitive(String primitive, String wrapper, String parse, String print) {
+        ValueType type = new ValueType(parse, print);
+        VALUE_TYPES.put(primitive, type);
+        VALUE_TYPES.put(wrapper, type);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment environment) {
+        for (TypeElement annotation : annotations) {
+            for (TypeElement type : ElementFilter.typesIn(environment.getElementsAnnotatedWith(annotation))) {
+                try {
+                    List<Property> properties = getProperties(type);
+                    generateCodec(type, properties);
+                } catch (UnsupportedTypeException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                            "No codec generated for " + type.getQualifiedName() + ": " + e.getMessage(), type);
+                } catch (IOException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "Unable to generate the codec of " + type.getQualifiedName() + ": " + e.getMessage(), type);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the bound properties of the given type, in the order in which they are written.
+     *
+     * @throws UnsupportedTypeException if the type cannot be handled by a generated codec
+     */
+    private List<Property> getProperties(TypeElement type) throws UnsupportedTypeException {
+        checkType(type);
+        checkPackage(processingEnv.getElementUtils().getPackageOf(type));
+
+        Map<String, Property> properties = new LinkedHashMap<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)
+                    || findAnnotation(field, XML_TRANSIENT) != null) {
+                continue;
+            }
+            Property property = getProperty(field);
+            if (properties.values().stream().anyMatch(other -> other.attribute == property.attribute && other.xmlName.equals(property.xmlName))) {
+                throw new UnsupportedTypeException("several fields bound to " + property.xmlName);
+            }
+            properties.put(property.fieldName, property);
+        }
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (hasXmlAnnotation(method)) {
+                throw new UnsupportedTypeException("annotated method " + method.getSimpleName());
+            }
+            String name = method.getSimpleName().toString();
+            if (name.equals("beforeUnmarshal") || name.equals("afterUnmarshal")
+                    || name.equals("beforeMarshal") || name.equals("afterMarshal")) {
+                throw new UnsupportedTypeException("callback method " + name);
+            }
+        }
+        return orderProperties(type, properties);
+    }
+
+    private void checkType(TypeElement type) throws UnsupportedTypeException {
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)
+                || !type.getTypeParameters().isEmpty()) {
+            throw new UnsupportedTypeException("not a concrete class");
+        }
+        if (type.getNestingKind() != NestingKind.TOP_LEVEL
+                && (type.getNestingKind() != NestingKind.MEMBER || !type.getModifiers().contains(Modifier.STATIC))) {
+            throw new UnsupportedTypeException("not a top-level or static nested class");
+        }
+        for (Element enclosing = type; enclosing.getKind() != ElementKind.PACKAGE; enclosing = enclosing.getEnclosingElement()) {
+            if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new UnsupportedTypeException("private class");
+            }
+        }
+        if (ElementFilter.constructorsIn(type.getEnclosedElements()).stream().noneMatch(constructor -> constructor.getParameters().isEmpty())) {
+            throw new UnsupportedTypeException("no constructor without arguments");
+        }
+        if (!"java.lang.Object".equals(type.getSuperclass().toString())) {
+            throw new UnsupportedTypeException("class extending " + type.getSuperclass());
+        }
+
+        AnnotationMirror accessorType = findAnnotation(type, XML_ACCESSOR_TYPE);
+        if (accessorType == null || !String.valueOf(getValue(accessorType, "value")).equals("FIELD")) {
+            throw new UnsupportedTypeException("no field access type");
+        }
+        for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+            String name = getName(annotation);
+            if (name.equals(XML_ROOT_ELEMENT)) {
+                Object namespace = getValue(annotation, "namespace");
+                if (namespace != null && !DEFAULT_NAME.equals(namespace) && !"".equals(namespace)) {
+                    throw new UnsupportedTypeException("namespace " + namespace);
+                }
+            } else if (name.equals(XML_TYPE)) {
+                for (ExecutableElement key : annotation.getElementValues().keySet()) {
+                    String member = key.getSimpleName().toString();
+                    if (!member.equals("name") && !member.equals("propOrder")) {
+                        throw new UnsupportedTypeException("@XmlType with " + member);
+                    }
+                }
+            } else if (name.startsWith(XML_ANNOTATIONS) && !name.equals(XML_ACCESSOR_TYPE)) {
+                throw new UnsupportedTypeException("annotation @" + annotation.getAnnotationType().asElement().getSimpleName());
+            }
+        }
+    }
+
+    private void checkPackage(PackageElement element) throws UnsupportedTypeException {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            String name = getName(annotation);
+            if (name.equals(XML_SCHEMA)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+                    String member = entry.getKey().getSimpleName().toString();
+                    String value = String.valueOf(entry.getValue().getValue());
+                    if (member.equals("namespace") && !value.isEmpty()
+                            || (member.equals("elementFormDefault") || member.equals("attributeFormDefault")) && value.equals("QUALIFIED")) {
+                        throw new UnsupportedTypeException("package with namespace");
+                    }
+                }
+            } else if (name.startsWith(XML_ANNOTATIONS) && !name.equals(XML_ACCESSOR_TYPE)) {
+                throw new UnsupportedTypeException("package annotation @" + annotation.getAnnotationType().asElement().getSimpleName());
+            }
+        }
+    }
+
+    private Property getProperty(VariableElement field) throws UnsupportedTypeException {
+        String fieldName = field.getSimpleName().toString();
+        TypeMirror fieldType = field.asType();
+        ValueType valueType = VALUE_TYPES.get(fieldType.toString());
+        if (valueType == null) {
+            throw new UnsupportedTypeException("field " + fieldName + " of type " + fieldType);
+        }
+
+        boolean attribute = false;
+        String xmlName = fieldName;
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            String name = getName(annotation);
+            if (name.equals(XML_ELEMENT) || name.equals(XML_ATTRIBUTE)) {
+                attribute = name.equals(XML_ATTRIBUTE);
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+                    String member = entry.getKey().getSimpleName().toString();
+                    Object value = entry.getValue().getValue();
+                    if (member.equals("name")) {
+                        if (!DEFAULT_NAME.equals(value)) {
+                            xmlName = String.valueOf(value);
+                        }
+                    } else if (!member.equals("required") && !(member.equals("nillable") && Boolean.FALSE.equals(value))) {
+                        throw new UnsupportedTypeException("field " + fieldName + " with " + member);
+                    }
+                }
+            } else if (name.startsWith(XML_ANNOTATIONS)) {
+                throw new UnsupportedTypeException("field " + fieldName + " with @" + annotation.getAnnotationType().asElement().getSimpleName());
+            }
+        }
+        return new Property(fieldName, xmlName, fieldType, valueType, attribute);
+    }
+
+    private List<Property> orderProperties(TypeElement type, Map<String, Property> properties) throws UnsupportedTypeException {
+        AnnotationMirror xmlType = findAnnotation(type, XML_TYPE);
+        Object propOrder = xmlType != null ? getValue(xmlType, "propOrder") : null;
+        if (!(propOrder instanceof List) || ((List<?>) propOrder).isEmpty()) {
+            return new ArrayList<>(properties.values());
+        }
+
+        List<Property> ordered = new ArrayList<>();
+        Map<String, Property> remaining = new LinkedHashMap<>(properties);
+        for (Object value : (List<?>) propOrder) {
+            String name = String.valueOf(((AnnotationValue) value).getValue());
+            if (name.isEmpty()) {
+                continue;
+            }
+            Property property = remaining.remove(name);
+            if (property == null) {
+                throw new UnsupportedTypeException("unknown property " + name + " in propOrder");
+            }
+            ordered.add(property);
+        }
+        for (Property property : remaining.values()) {
+            if (!property.attribute) {
+                throw new UnsupportedTypeException("property " + property.fieldName + " missing in propOrder");
+            }
+            ordered.add(property);
+        }
+        return ordered;
+    }
+
+    private void generateCodec(TypeElement type, List<Property> properties) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String typeName = type.getQualifiedName().toString();
+        String codecName = getFlatName(type) + CODEC_SUFFIX;
+        String qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+        boolean accessibleConstructor = ElementFilter.constructorsIn(type.getEnclosedElements()).stream()
+                .anyMatch(constructor -> constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE));
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedCodecName, type).openWriter();
+             PrintWriter out = new PrintWriter(writer)) {
+            if (!packageName.isEmpty()) {
+                out.printf("package %s;%n%n", packageName);
+            }
+            out.printf("import com.chavaillaz.jaxb.stream.CodecSupport;%n");
+            out.printf("import com.chavaillaz.jaxb.stream.ElementCodec;%n%n");
+            out.printf("import javax.annotation.processing.Generated;%n");
+            out.printf("import javax.xml.namespace.QName;%n");
+            out.printf("import javax.xml.stream.XMLStreamException;%n");
+            out.printf("import javax.xml.stream.XMLStreamReader;%n");
+            out.printf("import javax.xml.stream.XMLStreamWriter;%n");
+            if (!accessibleConstructor) {
+                out.printf("import java.lang.invoke.MethodHandle;%n");
+            }
+            out.printf("import java.lang.invoke.MethodHandles;%n");
+            if (!accessibleConstructor) {
+                out.printf("import java.lang.invoke.MethodType;%n");
+            }
+            out.printf("import java.lang.invoke.VarHandle;%n%n");
+            out.printf("/**%n * Codec of {@link %s}.%n */%n", typeName);
+            out.printf("@Generated(\"%s\")%n", CodecProcessor.class.getName());
+            out.printf("public final class %s implements ElementCodec<%s> {%n%n", codecName, typeName);
+
+            // Handles giving access to the private members
+            if (!accessibleConstructor) {
+                out.printf("    private static final MethodHandle CONSTRUCTOR;%n");
+            }
+            for (int i = 0; i < properties.size(); i++) {
+                out.printf("    private static final VarHandle FIELD_%d;%n", i);
+            }
+            out.printf("%n    static {%n");
+            out.printf("        try {%n");
+            out.printf("            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(%s.class, MethodHandles.lookup());%n", typeName);
+            if (!accessibleConstructor) {
+                out.printf("            CONSTRUCTOR = lookup.findConstructor(%s.class, MethodType.methodType(void.class));%n", typeName);
+            }
+            for (int i = 0; i < properties.size(); i++) {
+                Property property = properties.get(i);
+                out.printf("            FIELD_%d = lookup.findVarHandle(%s.class, \"%s\", %s.class);%n",
+                        i, typeName, property.fieldName, property.fieldType);
+            }
+            out.printf("        } catch (ReflectiveOperationException e) {%n");
+            out.printf("            throw new ExceptionInInitializerError(e);%n");
+            out.printf("        }%n");
+            out.printf("    }%n%n");
+
+            out.printf("    @Override%n");
+            out.printf("    public Class<%s> getType() {%n", typeName);
+            out.printf("        return %s.class;%n", typeName);
+            out.printf("    }%n%n");
+
+            generateRead(out, typeName, properties, accessibleConstructor);
+            generateWrite(out, typeName, properties);
+            out.printf("}%n");
+        }
+    }
+
+    private void generateRead(PrintWriter out, String typeName, List<Property> properties, boolean accessibleConstructor) {
+        out.printf("    @Override%n");
+        out.printf("    public %s read(XMLStreamReader reader) throws XMLStreamException {%n", typeName);
+        if (accessibleConstructor) {
+            out.printf("        %s element = new %s();%n", typeName, typeName);
+        } else {
+            out.printf("        %s element;%n", typeName);
+            out.printf("        try {%n");
+            out.printf("            element = (%s) CONSTRUCTOR.invoke();%n", typeName);
+            out.printf("        } catch (Throwable e) {%n");
+            out.printf("            throw new XMLStreamException(\"Unable to create an instance of %s\", e);%n", typeName);
+            out.printf("        }%n");
+        }
+        out.printf("        try {%n");
+        out.printf("            String text;%n");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            if (property.attribute) {
+                out.printf("            if ((text = reader.getAttributeValue(null, \"%s\")) != null) {%n", property.xmlName);
+                out.printf("                FIELD_%d.set(element, (%s) %s);%n", i, property.fieldType, property.parse("text"));
+                out.printf("            }%n");
+            }
+        }
+        out.printf("            while (CodecSupport.nextChild(reader)) {%n");
+        out.printf("                switch (reader.getLocalName()) {%n");
+        for (int i = 0; i < properties.size(); i++) {
+            Property property = properties.get(i);
+            if (!property.attribute) {
+                out.printf("                    case \"%s\":%n", property.xmlName);
+                out.printf("                        text = reader.getElementText();%n");
+                out.printf("                        FIELD_%d.set(element, (%s) %s);%n", i, property.fieldType, property.parse("text"));
+                out.printf("                        break;%n");
+            }
+        }
+        out.printf("                    default:%n");
+        out.printf("                        CodecSupport.skipElement(reader);%n");
+        out.printf("                        break;%n");
+        out.printf("                }%n");
+        out.printf("            }%n");
+        out.printf("        } catch (NumberFormatException e) {%n");
+        out.printf("            throw new XMLStreamException(\"Invalid value in \" + reader.getLocalName(), reader.getLocation(), e);%n");
+        out.printf("        }%n");
+        out.printf("        return element;%n");
+        out.printf("    }%n%n");
+    }
+
+    private void generateWrite(PrintWriter out, String typeName, List<Property> properties) {
+        out.printf("    @Override%n");
+        out.printf("    public void write(XMLStreamWriter writer, QName name, %s element) throws XMLStreamException {%n", typeName);
+        out.printf("        CodecSupport.writeStartElement(writer, name);%n");
+        for (int pass = 0; pass < 2; pass++) {
+            boolean attributes = pass == 0;
+            for (int i = 0; i < properties.size(); i++) {
+                Property property = properties.get(i);
+                if (property.attribute != attributes) {
+                    continue;
+                }
+                String value = "value" + i;
+                out.printf("        %s %s = (%s) FIELD_%d.get(element);%n", property.fieldType, value, property.fieldType, i);
+                String indent = "        ";
+                if (!property.fieldType.getKind().isPrimitive()) {
+                    out.printf("        if (%s != null) {%n", value);
+                    indent = "            ";
+                }
+                if (attributes) {
+                    out.printf("%swriter.writeAttribute(\"%s\", %s);%n", indent, property.xmlName, property.print(value));
+                } else {
+                    out.printf("%sCodecSupport.writeElement(writer, \"%s\", %s);%n", indent, property.xmlName, property.print(value));
+                }
+                if (!property.fieldType.getKind().isPrimitive()) {
+                    out.printf("        }%n");
+                }
+            }
+        }
+        out.printf("        writer.writeEndElement();%n");
+        out.printf("    }%n%n");
+    }
+
+    /**
+     * Gets the name of the given type without its package, the names of the nested types being joined by underscores.
+     *
+     * @param type The type
+     * @return The flat name of the type
+     */
+    static String getFlatName(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        return enclosing instanceof TypeElement ? getFlatName((TypeElement) enclosing) + "_" + name : name;
+    }
+
+    private static boolean hasXmlAnnotation(Element element) {
+        return element.getAnnotationMirrors().stream().anyMatch(annotation -> getName(annotation).startsWith(XML_ANNOTATIONS));
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String name) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (getName(annotation).equals(name)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private static String getName(AnnotationMirror annotation) {
+        return ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    private static Object getValue(AnnotationMirror annotation, String member) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(member)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Conversion of a value type from and to text, given as format patterns of the generated expressions.
+     */
+    @Value
+    private static class ValueType {
+
+        String parse;
+        String print;
+
+    }
+
+    /**
+     * Field bound to a child element or an attribute.
+     */
+    @Value
+    private static class Property {
+
+        String fieldName;
+        String xmlName;
+        TypeMirror fieldType;
+        ValueType valueType;
+        boolean attribute;
+
+        String parse(String text) {
+            return String.format(valueType.parse, text);
+        }
+
+        String print(String value) {
+            return String.format(valueType.print, value);
+        }
+
+    }
+
+    /**
+     * Exception thrown when a type cannot be handled by a generated codec.
+     */
+    private static class UnsupportedTypeException extends Exception {
+
+        UnsupportedTypeException(String reason) {
+            super(reason);
+        }
+
+    }
+
+}
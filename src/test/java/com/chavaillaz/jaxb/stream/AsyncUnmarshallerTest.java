@@ -0,0 +1,89 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.Metric;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.chavaillaz.jaxb.stream.StreamingEngineTest.writeManyMetrics;
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsyncUnmarshallerTest {
+
+    public static final String FILE_NAME = "metrics-async.xml";
+
+    private static StreamingEngine engine;
+    private static List<Metric> writtenMetrics;
+
+    @BeforeAll
+    static void writeMetrics() throws Exception {
+        engine = StreamingEngine.builder().types(TYPES).build();
+        writtenMetrics = writeManyMetrics(engine, FILE_NAME, 1000);
+    }
+
+    @Test
+    void testFeedingSmallChunks() throws Exception {
+        byte[] content = Files.readAllBytes(Path.of(FILE_NAME));
+        List<Metric> readMetrics = new ArrayList<>();
+        AsyncUnmarshaller unmarshaller = new AsyncUnmarshaller(engine, (type, element) -> readMetrics.add((Metric) element));
+        ByteBuffer buffer = ByteBuffer.allocate(7);
+        for (int offset = 0; offset < content.length; offset += buffer.capacity()) {
+            buffer.clear();
+            buffer.put(content, offset, Math.min(buffer.capacity(), content.length - offset));
+            buffer.flip();
+            unmarshaller.feed(buffer);
+            // Each element is given as soon as its end tag has been received
+            assertThat(readMetrics).isEqualTo(writtenMetrics.subList(0, readMetrics.size()));
+        }
+        unmarshaller.endOfInput();
+        unmarshaller.close();
+
+        assertThat(readMetrics).isEqualTo(writtenMetrics);
+        assertThat(unmarshaller.getCount()).isEqualTo(writtenMetrics.size());
+    }
+
+    @Test
+    void testReadingChannel() throws Exception {
+        List<Metric> readMetrics = new ArrayList<>();
+        try (AsyncUnmarshaller unmarshaller = new AsyncUnmarshaller(engine, (type, element) -> readMetrics.add((Metric) element))) {
+            long count = unmarshaller.read(AsynchronousFileChannel.open(Path.of(FILE_NAME))).get(30, TimeUnit.SECONDS);
+            assertThat(count).isEqualTo(writtenMetrics.size());
+        }
+        assertThat(readMetrics).isEqualTo(writtenMetrics);
+    }
+
+    @Test
+    void testReadingChannelFailure() throws Exception {
+        AsynchronousFileChannel channel = AsynchronousFileChannel.open(Path.of(FILE_NAME));
+        AsyncUnmarshaller unmarshaller = new AsyncUnmarshaller(engine, (type, element) -> {
+            throw new IllegalStateException("Consumer failure");
+        });
+        CompletableFuture<Long> result = unmarshaller.read(channel);
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(30, TimeUnit.SECONDS));
+        assertThat(exception).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(channel.isOpen()).isFalse();
+        assertThat(unmarshaller.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testIncompleteInput() throws Exception {
+        byte[] content = Files.readAllBytes(Path.of(FILE_NAME));
+        try (AsyncUnmarshaller unmarshaller = new AsyncUnmarshaller(engine, (type, element) -> {})) {
+            unmarshaller.feed(ByteBuffer.wrap(content, 0, content.length / 2));
+            assertThrows(XMLStreamException.class, unmarshaller::endOfInput);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.Metric;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.chavaillaz.jaxb.stream.StreamingEngineTest.writeManyMetrics;
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static java.util.Collections.synchronizedList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchUnmarshallerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testProcessingOfDirectory() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).build();
+        List<Metric> writtenMetrics = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            writtenMetrics.addAll(writeManyMetrics(engine, directory.resolve("metrics-" + i + ".xml").toString(), 20));
+        }
+        Files.writeString(directory.resolve("ignored.txt"), "Not an XML file");
+
+        List<Metric> readMetrics = synchronizedList(new ArrayList<>());
+        BatchUnmarshaller.Result result = new BatchUnmarshaller(engine, 2)
+                .process(directory, "*.xml", (file, type, element) -> readMetrics.add((Metric) element));
+
+        assertThat(result.getFiles()).hasSize(5);
+        assertThat(result.getFailures()).isEmpty();
+        assertThat(result.getElements()).isEqualTo(writtenMetrics.size());
+        assertThat(readMetrics).containsExactlyInAnyOrderElementsOf(writtenMetrics);
+    }
+
+    @Test
+    void testFailureOfOneFile() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).build();
+        Path valid = directory.resolve("valid.xml");
+        Path invalid = directory.resolve("invalid.xml");
+        writeManyMetrics(engine, valid.toString(), 10);
+        Files.writeString(invalid, "<metrics><unknown/></metrics>");
+
+        BatchUnmarshaller.Result result = new BatchUnmarshaller(engine, 4)
+                .process(List.of(invalid, valid), (file, type, element) -> {
+                });
+
+        assertThat(result.getFailures()).extracting(BatchUnmarshaller.FileResult::getFile).containsExactly(invalid);
+        assertThat(result.getFiles().get(1).getElements()).isEqualTo(20);
+    }
+
+    @Test
+    void testInvalidConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchUnmarshaller(StreamingEngine.getDefault(), 0));
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.Metric;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileInputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.chavaillaz.jaxb.stream.StreamingEngineTest.writeManyNonAsciiMetrics;
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CheckpointTest {
+
+    public static final String FILE_NAME = "metrics-checkpoint.xml";
+    public static final String CHECKPOINT_FILE_NAME = "metrics-checkpoint.properties";
+
+    private static StreamingEngine engine;
+    private static List<Metric> writtenMetrics;
+
+    @BeforeAll
+    static void writeMetrics() throws Exception {
+        engine = StreamingEngine.builder().types(TYPES).build();
+        writtenMetrics = writeManyNonAsciiMetrics(engine, FILE_NAME, 500);
+    }
+
+    @Test
+    void testResumeFromCheckpoint() throws Exception {
+        Path file = Path.of(FILE_NAME);
+        Path checkpointFile = Path.of(CHECKPOINT_FILE_NAME);
+        List<Metric> readMetrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(file);
+            for (int i = 0; i < 300; i++) {
+                readMetrics.add((Metric) unmarshaller.next());
+                if (i % 100 == 0) {
+                    unmarshaller.checkpoint().write(checkpointFile);
+                }
+            }
+            unmarshaller.skipNext();
+            unmarshaller.checkpoint().write(checkpointFile);
+        }
+
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+        assertThat(checkpoint.getOrdinal()).isEqualTo(301);
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(file, checkpoint);
+            unmarshaller.iterate((type, element) -> readMetrics.add((Metric) element));
+            assertThat(unmarshaller.getOrdinal()).isEqualTo(writtenMetrics.size());
+
+            // Checkpoint at the end of the stream
+            unmarshaller.open(file, unmarshaller.checkpoint());
+            assertThat(unmarshaller.hasNext()).isFalse();
+        }
+
+        List<Metric> expectedMetrics = new ArrayList<>(writtenMetrics);
+        expectedMetrics.remove(300);
+        assertThat(readMetrics).isEqualTo(expectedMetrics);
+    }
+
+    @Test
+    void testCheckpointFromResumedStream() throws Exception {
+        Path file = Path.of(FILE_NAME);
+        Checkpoint checkpoint;
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(file, new Checkpoint(0, 0));
+            for (int i = 0; i < 10; i++) {
+                unmarshaller.next();
+            }
+            checkpoint = unmarshaller.checkpoint();
+        }
+
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(file, checkpoint);
+            for (int i = 10; i < 20; i++) {
+                assertThat(unmarshaller.next()).isEqualTo(writtenMetrics.get(i));
+            }
+            checkpoint = unmarshaller.checkpoint();
+        }
+
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(file, checkpoint);
+            assertThat(unmarshaller.getOrdinal()).isEqualTo(20);
+            assertThat(unmarshaller.next()).isEqualTo(writtenMetrics.get(20));
+        }
+    }
+
+    @Test
+    void testCheckpointWithoutFile() throws Exception {
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThrows(IllegalStateException.class, unmarshaller::checkpoint);
+        }
+    }
+
+}
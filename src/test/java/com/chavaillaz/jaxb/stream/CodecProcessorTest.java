@@ -0,0 +1,83 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CodecProcessorTest {
+
+    public static final String FILE_NAME = "metrics-codec.xml";
+    public static final String JAXB_FILE_NAME = "metrics-codec-jaxb.xml";
+
+    @Test
+    void testGeneratedCodecs() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).generatedCodecs(true).build();
+        assertThat(engine.getCodec(DiskMetric.class)).isInstanceOf(DiskMetric_Codec.class);
+        assertThat(engine.getCodec(MemoryMetric.class)).isInstanceOf(MemoryMetric_Codec.class);
+        assertThat(engine.getCodec(ProcessorMetric.class)).isInstanceOf(ProcessorMetric_Codec.class);
+        assertThat(engine.getCodec(MetricsList.class)).isNull();
+
+        StreamingEngine jaxbEngine = StreamingEngine.builder().types(TYPES).build();
+        assertThat(jaxbEngine.getCodec(DiskMetric.class)).isNull();
+    }
+
+    @Test
+    void testDefaultMarshallerUsesJaxb() {
+        assertThat(StreamingEngine.getDefault().getCodec(DiskMetric.class)).isNull();
+        try (StreamingMarshaller marshaller = new StreamingMarshaller(MetricsList.class)) {
+            assertThat(marshaller.getCodec(DiskMetric.class)).isNull();
+            assertThat(marshaller.getCodec(MemoryMetric.class)).isNull();
+        }
+    }
+
+    @Test
+    void testSameOutputAsJaxb() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).generatedCodecs(true).build();
+        StreamingEngine jaxbEngine = StreamingEngine.builder().types(TYPES).build();
+        List<Metric> metrics = List.of(
+                new DiskMetric("disk <&> \"é\"", 1, Long.MAX_VALUE, -1),
+                new DiskMetric("", 0, 0, 0),
+                new MemoryMetric(1, 2, 3),
+                new ProcessorMetric(0.1, 1e-10, 8),
+                new ProcessorMetric(Double.NaN, Double.NEGATIVE_INFINITY, -1),
+                new ProcessorMetric(Double.POSITIVE_INFINITY, -0.0, 0));
+
+        writeMetrics(engine, FILE_NAME, metrics);
+        writeMetrics(jaxbEngine, JAXB_FILE_NAME, metrics);
+        assertThat(Files.readString(Path.of(FILE_NAME))).isEqualTo(Files.readString(Path.of(JAXB_FILE_NAME)));
+
+        assertThat(readMetrics(engine, JAXB_FILE_NAME)).isEqualTo(metrics);
+        assertThat(readMetrics(jaxbEngine, FILE_NAME)).isEqualTo(metrics);
+    }
+
+    private static void writeMetrics(StreamingEngine engine, String fileName, List<Metric> metrics) throws Exception {
+        try (StreamingMarshaller marshaller = engine.newMarshaller(MetricsList.class)) {
+            marshaller.open(new FileOutputStream(fileName));
+            for (Metric metric : metrics) {
+                write(marshaller, metric.getClass(), metric);
+            }
+        }
+    }
+
+    private static <T> void write(StreamingMarshaller marshaller, Class<T> type, Object metric) throws Exception {
+        marshaller.write(type, type.cast(metric));
+    }
+
+    private static List<Metric> readMetrics(StreamingEngine engine, String fileName) throws Exception {
+        List<Metric> metrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(Path.of(fileName));
+            unmarshaller.iterate((type, element) -> metrics.add((Metric) element));
+        }
+        return metrics;
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.DiskMetric;
+import com.chavaillaz.jaxb.stream.metric.MemoryMetric;
+import com.chavaillaz.jaxb.stream.metric.ProcessorMetric;
+import jakarta.xml.bind.JAXBContext;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ContextCacheTest {
+
+    @Test
+    void testSameContextForSameTypes() throws Exception {
+        ContextCache cache = new ContextCache(10);
+        JAXBContext context = cache.getContext(DiskMetric.class, MemoryMetric.class);
+        assertThat(cache.getContext(MemoryMetric.class, DiskMetric.class)).isSameAs(context);
+        assertThat(cache.getContext(DiskMetric.class)).isNotSameAs(context);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testEvictionOfLeastRecentlyUsed() throws Exception {
+        ContextCache cache = new ContextCache(2);
+        JAXBContext disk = cache.getContext(DiskMetric.class);
+        JAXBContext memory = cache.getContext(MemoryMetric.class);
+        assertThat(cache.getContext(DiskMetric.class)).isSameAs(disk);
+
+        cache.getContext(ProcessorMetric.class);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getContext(DiskMetric.class)).isSameAs(disk);
+        assertThat(cache.getContext(MemoryMetric.class)).isNotSameAs(memory);
+    }
+
+    @Test
+    void testEvictionByClassLoader() throws Exception {
+        ContextCache cache = new ContextCache(10);
+        cache.getContext(DiskMetric.class);
+        cache.evict(DiskMetric.class.getClassLoader());
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void testEvictionOfUnloadedTypes() throws Exception {
+        ContextCache cache = new ContextCache(10);
+        WeakReference<ClassLoader> loader = loadContextInIsolation(cache, DiskMetric.class.getName());
+        assertThat(cache.size()).isEqualTo(1);
+
+        for (int i = 0; i < 50 && (loader.get() != null || cache.size() > 0); i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertThat(loader.get()).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    private static WeakReference<ClassLoader> loadContextInIsolation(ContextCache cache, String name) throws Exception {
+        URL classes = DiskMetric.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[]{classes}, ContextCacheTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+                if (!className.equals(name)) {
+                    return super.loadClass(className, resolve);
+                }
+                synchronized (getClassLoadingLock(className)) {
+                    Class<?> type = findLoadedClass(className);
+                    return type != null ? type : findClass(className);
+                }
+            }
+        };
+        Class<?> type = loader.loadClass(name);
+        assertThat(type).isNotSameAs(DiskMetric.class);
+        assertThat(cache.getContext(type)).isSameAs(cache.getContext(type));
+        return new WeakReference<>(loader);
+    }
+
+    @Test
+    void testInvalidMaximumSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ContextCache(0));
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.Metric;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.chavaillaz.jaxb.stream.StreamingEngineTest.writeManyNonAsciiMetrics;
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ElementIndexTest {
+
+    public static final String FILE_NAME = "metrics-index.xml";
+
+    private static StreamingEngine engine;
+    private static List<Metric> writtenMetrics;
+
+    @BeforeAll
+    static void writeMetrics() throws Exception {
+        engine = StreamingEngine.builder().types(TYPES).build();
+        writtenMetrics = writeManyNonAsciiMetrics(engine, FILE_NAME, 200);
+    }
+
+    @Test
+    void testReadElementsByOrdinal() throws Exception {
+        Path file = Path.of(FILE_NAME);
+        ElementIndex.build(engine, file, null).write(ElementIndex.getSidecar(file));
+        ElementIndex index = ElementIndex.read(ElementIndex.getSidecar(file));
+        assertThat(index.size()).isEqualTo(writtenMetrics.size());
+        assertThat(index.getTypeName(0)).isEqualTo("disk");
+        assertThat(index.getKey(0)).isNull();
+
+        try (IndexedUnmarshaller unmarshaller = new IndexedUnmarshaller(engine, file, index)) {
+            for (int i = writtenMetrics.size() - 1; i >= 0; i -= 7) {
+                assertThat(unmarshaller.get(i)).isEqualTo(writtenMetrics.get(i));
+            }
+            assertThat(unmarshaller.get(0)).isEqualTo(writtenMetrics.get(0));
+            assertThrows(IndexOutOfBoundsException.class, () -> unmarshaller.get(writtenMetrics.size()));
+        }
+    }
+
+    @Test
+    void testReadElementsByKey() throws Exception {
+        Path file = Path.of(FILE_NAME);
+        ElementIndex index = ElementIndex.build(engine, file, "disk");
+        assertThat(index.indexOf("disque-é€𝄞-42")).isEqualTo(84);
+
+        try (IndexedUnmarshaller unmarshaller = new IndexedUnmarshaller(engine, file, index)) {
+            assertThat(unmarshaller.get("disque-é€𝄞-42")).isEqualTo(writtenMetrics.get(84));
+            assertThat(unmarshaller.get("disque-é€𝄞-199")).isEqualTo(writtenMetrics.get(398));
+            assertThat(unmarshaller.get("unknown")).isNull();
+        }
+    }
+
+    @Test
+    void testIndexNotMatchingFile() throws Exception {
+        Path file = Path.of(FILE_NAME);
+        ElementIndex index = ElementIndex.build(engine, file, null);
+        Path otherFile = Files.writeString(Path.of("metrics-index-other.xml"), "<metrics/>");
+        assertThrows(IOException.class, () -> new IndexedUnmarshaller(engine, otherFile, index));
+    }
+
+}
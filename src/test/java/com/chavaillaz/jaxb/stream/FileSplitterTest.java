@@ -0,0 +1,82 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.DiskMetric;
+import com.chavaillaz.jaxb.stream.metric.MemoryMetric;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileSplitterTest {
+
+    public static final String FILE_NAME = "metrics-split.xml";
+
+    private static final String ELEMENTS = "<memory><freeMemory>1</freeMemory><maxMemory>2</maxMemory><totalMemory>3</totalMemory></memory>"
+            + "<disk><disk>é</disk><freePartitionSpace>4</freePartitionSpace></disk>"
+            + "<memory><freeMemory>5</freeMemory><maxMemory>6</maxMemory><totalMemory>7</totalMemory></memory>";
+
+    private static StreamingEngine engine;
+
+    @BeforeAll
+    static void createEngine() throws Exception {
+        engine = StreamingEngine.builder().types(TYPES).build();
+    }
+
+    @Test
+    void testDeclarationKeptInHeader() throws Exception {
+        String declaration = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>";
+        Files.write(Path.of(FILE_NAME), (declaration + "\n<metrics>" + ELEMENTS + "</metrics>").getBytes(ISO_8859_1));
+
+        List<FileRange> ranges = engine.split(Path.of(FILE_NAME), 2);
+        assertThat(new String(ranges.get(0).getHeader(), ISO_8859_1)).isEqualTo(declaration + "<metrics>");
+        assertThat(readAll(ranges)).hasSize(3)
+                .filteredOn(DiskMetric.class::isInstance)
+                .extracting(element -> ((DiskMetric) element).getDisk())
+                .containsExactly("é");
+    }
+
+    @Test
+    void testMarkupSkippedBeforeRoot() throws Exception {
+        String prolog = "<?xml version=\"1.0\"?>\n"
+                + "<!-- <fake> root -->\n"
+                + "<?processing <fake>?>\n"
+                + "<!DOCTYPE metrics [ <!ENTITY value \"<fake>\"> <!-- ]> --> ]>\n";
+        Files.write(Path.of(FILE_NAME), (prolog + "<metrics>" + ELEMENTS + "</metrics>\n<!-- </metrics> -->").getBytes(UTF_8));
+
+        List<FileRange> ranges = engine.split(Path.of(FILE_NAME), 3);
+        assertThat(new String(ranges.get(0).getHeader(), UTF_8)).isEqualTo("<?xml version=\"1.0\"?><metrics>");
+        assertThat(new String(ranges.get(0).getFooter(), UTF_8)).isEqualTo("</metrics>");
+        assertThat(readAll(ranges)).hasSize(3).contains(new MemoryMetric(5, 6, 7));
+    }
+
+    @Test
+    void testEmptyRoot() throws Exception {
+        Files.write(Path.of(FILE_NAME), "<?xml version=\"1.0\"?><metrics count=\"0\"/>".getBytes(UTF_8));
+
+        List<FileRange> ranges = engine.split(Path.of(FILE_NAME), 4);
+        assertThat(ranges).hasSize(1);
+        assertThat(ranges.get(0).getLength()).isZero();
+        assertThat(new String(ranges.get(0).getHeader(), UTF_8)).isEqualTo("<?xml version=\"1.0\"?><metrics count=\"0\">");
+        assertThat(readAll(ranges)).isEmpty();
+    }
+
+    private List<Object> readAll(List<FileRange> ranges) throws Exception {
+        List<Object> elements = new ArrayList<>();
+        for (FileRange range : ranges) {
+            try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+                unmarshaller.open(range);
+                unmarshaller.iterate((type, element) -> elements.add(element));
+            }
+        }
+        return elements;
+    }
+
+}
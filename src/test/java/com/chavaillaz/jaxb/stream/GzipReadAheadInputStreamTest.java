@@ -0,0 +1,135 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.Metric;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static com.chavaillaz.jaxb.stream.StreamingEngineTest.writeManyMetrics;
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GzipReadAheadInputStreamTest {
+
+    public static final String FILE_NAME = "metrics-gzip.xml";
+    public static final int BLOCK_SIZE = 60_000;
+
+    private static StreamingEngine engine;
+    private static List<Metric> writtenMetrics;
+    private static byte[] content;
+
+    @BeforeAll
+    static void writeMetrics() throws Exception {
+        engine = StreamingEngine.builder().types(TYPES).build();
+        writtenMetrics = writeManyMetrics(engine, FILE_NAME, 2000);
+        content = Files.readAllBytes(Path.of(FILE_NAME));
+    }
+
+    @Test
+    void testReadingGzipFile() throws Exception {
+        Path file = Path.of(FILE_NAME + ".gz");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(file))) {
+            output.write(content);
+        }
+        assertThat(readMetrics(file)).isEqualTo(writtenMetrics);
+    }
+
+    @Test
+    void testReadingMultiMemberGzipFile() throws Exception {
+        Path file = Path.of(FILE_NAME + ".multi.gz");
+        try (OutputStream output = Files.newOutputStream(file)) {
+            int half = content.length / 2;
+            output.write(gzip(Arrays.copyOfRange(content, 0, half)));
+            output.write(gzip(Arrays.copyOfRange(content, half, content.length)));
+        }
+        assertThat(readMetrics(file)).isEqualTo(writtenMetrics);
+    }
+
+    @Test
+    void testReadingBlockGzipFile() throws Exception {
+        Path file = Path.of(FILE_NAME + ".bgz");
+        Files.write(file, blockGzip(content));
+        assertThat(readMetrics(file)).isEqualTo(writtenMetrics);
+
+        try (InputStream input = new GzipReadAheadInputStream(FileChannel.open(file))) {
+            assertThat(input.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void testCorruptedBlockGzipFile() throws Exception {
+        Path file = Path.of(FILE_NAME + ".corrupted.bgz");
+        byte[] compressed = blockGzip(content);
+        compressed[compressed.length / 2] ^= 0x55;
+        Files.write(file, compressed);
+
+        try (InputStream input = new GzipReadAheadInputStream(FileChannel.open(file))) {
+            assertThrows(IOException.class, input::readAllBytes);
+        }
+    }
+
+    private List<Metric> readMetrics(Path file) throws Exception {
+        List<Metric> metrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(file);
+            unmarshaller.iterate((type, element) -> metrics.add((Metric) element));
+        }
+        return metrics;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(data);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Compresses the given data into BGZF blocks, ending with the empty end-of-file block.
+     */
+    private static byte[] blockGzip(byte[] data) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (int start = 0; start < data.length; start += BLOCK_SIZE) {
+            output.writeBytes(block(data, start, Math.min(start + BLOCK_SIZE, data.length)));
+        }
+        output.writeBytes(block(data, 0, 0));
+        return output.toByteArray();
+    }
+
+    private static byte[] block(byte[] data, int start, int end) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, start, end - start);
+        deflater.finish();
+        byte[] deflated = new byte[2 * BLOCK_SIZE];
+        int deflatedLength = deflater.deflate(deflated);
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, start, end - start);
+        ByteBuffer block = ByteBuffer.allocate(18 + deflatedLength + 8).order(LITTLE_ENDIAN);
+        block.put(new byte[]{0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF});
+        block.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2);
+        block.putShort((short) (block.capacity() - 1));
+        block.put(deflated, 0, deflatedLength);
+        block.putInt((int) crc.getValue()).putInt(end - start);
+        return block.array();
+    }
+
+}
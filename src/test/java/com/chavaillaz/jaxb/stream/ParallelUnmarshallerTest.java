@@ -0,0 +1,104 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.DiskMetric;
+import com.chavaillaz.jaxb.stream.metric.Metric;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.chavaillaz.jaxb.stream.StreamingEngineTest.writeManyMetrics;
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ParallelUnmarshallerTest {
+
+    public static final String FILE_NAME = "metrics-parallel.xml";
+    public static final String INVALID_FILE_NAME = "metrics-parallel-invalid.xml";
+
+    private static StreamingEngine engine;
+    private static List<Metric> writtenMetrics;
+
+    @BeforeAll
+    static void writeMetrics() throws Exception {
+        engine = StreamingEngine.builder().types(TYPES).build();
+        writtenMetrics = writeManyMetrics(engine, FILE_NAME, 500);
+    }
+
+    @Test
+    void testOrderedDelivery() throws Exception {
+        List<Metric> readMetrics = new ArrayList<>();
+        try (ParallelUnmarshaller unmarshaller = new ParallelUnmarshaller(engine, 4, 16, true)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            unmarshaller.iterate((type, element) -> readMetrics.add((Metric) element));
+        }
+        assertThat(readMetrics).isEqualTo(writtenMetrics);
+    }
+
+    @Test
+    void testUnorderedDelivery() throws Exception {
+        List<Metric> readMetrics = new ArrayList<>();
+        try (ParallelUnmarshaller unmarshaller = new ParallelUnmarshaller(engine, 4, 16, false)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            unmarshaller.iterate((type, element) -> readMetrics.add((Metric) element));
+        }
+        assertThat(readMetrics).containsExactlyInAnyOrderElementsOf(writtenMetrics);
+    }
+
+    @Test
+    void testUnknownTypeInStream() throws Exception {
+        StreamingEngine diskEngine = StreamingEngine.builder().types(DiskMetric.class).build();
+        try (ParallelUnmarshaller unmarshaller = new ParallelUnmarshaller(diskEngine, 2, 4, true)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThrows(XMLStreamException.class, () -> unmarshaller.iterate((type, element) -> {
+            }));
+        }
+    }
+
+    @Test
+    void testUnknownTypeInUnorderedStream() throws Exception {
+        StreamingEngine diskEngine = StreamingEngine.builder().types(DiskMetric.class).build();
+        try (ParallelUnmarshaller unmarshaller = new ParallelUnmarshaller(diskEngine, 2, 4, false)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                assertThrows(XMLStreamException.class, () -> unmarshaller.iterate((type, element) -> {
+                }));
+                // The end of the stream is still delivered after the failure
+                unmarshaller.iterate((type, element) -> {
+                });
+            });
+        }
+    }
+
+    @Test
+    void testGeneratedCodecs() throws Exception {
+        Files.writeString(Path.of(INVALID_FILE_NAME), "<metrics><disk><disk>disk</disk><freePartitionSpace>invalid</freePartitionSpace></disk></metrics>");
+
+        // JAXB ignores the invalid value while the stricter generated codec rejects it
+        try (ParallelUnmarshaller unmarshaller = new ParallelUnmarshaller(engine, 2, 4, true)) {
+            unmarshaller.open(new FileInputStream(INVALID_FILE_NAME));
+            unmarshaller.iterate((type, element) -> assertThat(((DiskMetric) element).getDisk()).isEqualTo("disk"));
+        }
+        StreamingEngine codecEngine = StreamingEngine.builder().types(TYPES).generatedCodecs(true).build();
+        try (ParallelUnmarshaller unmarshaller = new ParallelUnmarshaller(codecEngine, 2, 4, true)) {
+            unmarshaller.open(new FileInputStream(INVALID_FILE_NAME));
+            assertThrows(XMLStreamException.class, () -> unmarshaller.iterate((type, element) -> {
+            }));
+        }
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelUnmarshaller(engine, 0, 1, true));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelUnmarshaller(engine, 1, 0, true));
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.MemoryMetric;
+import com.chavaillaz.jaxb.stream.metric.MetricsList;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.chavaillaz.jaxb.stream.StreamingEngineTest.writeManyMetrics;
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.withinPercentage;
+
+class StreamProgressTest {
+
+    public static final String FILE_NAME = "metrics-progress.xml";
+
+    private static final MBeanServer SERVER = ManagementFactory.getPlatformMBeanServer();
+
+    @Test
+    void testProgressOfReading() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).monitoring(true).build();
+        writeManyMetrics(engine, FILE_NAME, 1000);
+        long fileSize = Files.size(Path.of(FILE_NAME));
+
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(Path.of(FILE_NAME));
+            unmarshaller.nextBatch(500, (type, element) -> { });
+
+            StreamProgressMXBean progress = findProgress("Read");
+            assertThat(progress.getFile()).isEqualTo(Path.of(FILE_NAME).toString());
+            assertThat(progress.getElements()).isEqualTo(500);
+            assertThat(progress.getInputLength()).isEqualTo(fileSize);
+            assertThat(progress.getPosition()).isPositive().isLessThanOrEqualTo(fileSize);
+            assertThat(progress.getProgress()).isPositive().isLessThanOrEqualTo(100);
+            assertThat(progress.getElementsPerSecond()).isPositive();
+            assertThat(progress.getAverageBytesPerSecond()).isPositive();
+            assertThat(progress.getEstimatedSecondsRemaining()).isNotNegative();
+        }
+        assertThat(findNames("Read")).isEmpty();
+    }
+
+    @Test
+    void testProgressOfReadingChannel() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).monitoring(true).build();
+        writeManyMetrics(engine, FILE_NAME, 1000);
+        long fileSize = Files.size(Path.of(FILE_NAME));
+
+        try (FileChannel channel = FileChannel.open(Path.of(FILE_NAME));
+             StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(channel);
+            unmarshaller.nextBatch(500, (type, element) -> { });
+
+            StreamProgressMXBean progress = findProgress("Read");
+            assertThat(progress.getInputLength()).isEqualTo(fileSize);
+            assertThat(progress.getProgress()).isPositive().isLessThanOrEqualTo(100);
+        }
+    }
+
+    @Test
+    void testRecentRatesFromSamples() {
+        AtomicLong position = new AtomicLong();
+        StreamProgress progress = new StreamProgress("Test", position::get, -1);
+        progress.setElements(10);
+        position.set(100);
+        progress.sample();
+        progress.setElements(30);
+        position.set(500);
+        progress.sample();
+
+        // Polling does not change the samples, which only cover the last interval
+        progress.setElements(1000);
+        position.set(10000);
+        double elementsPerSecond = progress.getElementsPerSecond();
+        assertThat(elementsPerSecond).isPositive();
+        assertThat(progress.getElementsPerSecond()).isEqualTo(elementsPerSecond);
+        assertThat(progress.getBytesPerSecond()).isCloseTo(elementsPerSecond * 20, withinPercentage(0.001));
+    }
+
+    @Test
+    void testProgressOfWriting() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).monitoring(true).build();
+        try (StreamingMarshaller marshaller = engine.newMarshaller(MetricsList.class)) {
+            marshaller.open(new ByteArrayOutputStream());
+            for (int i = 0; i < 100; i++) {
+                marshaller.write(MemoryMetric.class, new MemoryMetric());
+            }
+
+            StreamProgressMXBean progress = findProgress("Write");
+            assertThat(progress.getFile()).isNull();
+            assertThat(progress.getElements()).isEqualTo(100);
+            assertThat(progress.getInputLength()).isEqualTo(-1);
+            assertThat(progress.getProgress()).isEqualTo(-1);
+            assertThat(progress.getEstimatedSecondsRemaining()).isEqualTo(-1);
+        }
+        assertThat(findNames("Write")).isEmpty();
+    }
+
+    @Test
+    void testNoProgressWithoutMonitoring() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).build();
+        try (StreamingMarshaller marshaller = engine.newMarshaller(MetricsList.class)) {
+            marshaller.open(new ByteArrayOutputStream());
+            assertThat(findNames("Write")).isEmpty();
+        }
+    }
+
+    private static StreamProgressMXBean findProgress(String operation) throws Exception {
+        Set<ObjectName> names = findNames(operation);
+        assertThat(names).hasSize(1);
+        return JMX.newMXBeanProxy(SERVER, names.iterator().next(), StreamProgressMXBean.class);
+    }
+
+    private static Set<ObjectName> findNames(String operation) throws Exception {
+        return SERVER.queryNames(new ObjectName("com.chavaillaz.jaxb.stream:type=Stream,operation=" + operation + ",*"), null);
+    }
+
+}
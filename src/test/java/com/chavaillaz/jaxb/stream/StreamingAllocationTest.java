@@ -0,0 +1,123 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.MemoryMetric;
+import com.chavaillaz.jaxb.stream.metric.MetricsList;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static java.lang.management.ManagementFactory.getThreadMXBean;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Allocation benchmark of the cursor loop of {@link StreamingUnmarshaller} (outside of the element instances),
+ * measuring the bytes allocated by the current thread while resolving the types and skipping or reading the elements.
+ */
+class StreamingAllocationTest {
+
+    public static final String FILE_NAME = "metrics-allocation.xml";
+    public static final int ELEMENTS = 50_000;
+    public static final int WARMUP_ELEMENTS = 10_000;
+    public static final int PASSES = 10;
+
+    private static StreamingEngine engine;
+
+    @BeforeAll
+    static void writeMetrics() throws Exception {
+        engine = StreamingEngine.builder().types(TYPES).build();
+        try (StreamingMarshaller marshaller = engine.newMarshaller(MetricsList.class)) {
+            marshaller.open(new FileOutputStream(FILE_NAME));
+            MemoryMetric memory = new MemoryMetric();
+            for (int i = 0; i < ELEMENTS; i++) {
+                marshaller.write(MemoryMetric.class, memory);
+            }
+        }
+    }
+
+    @Test
+    void testNoAllocationPerElementInCursorLoop() throws Exception {
+        assertThat(measureBestAllocationPerElement(null, unmarshaller -> {
+            unmarshaller.getNextType();
+            unmarshaller.skipNext();
+        })).isLessThan(1.0);
+    }
+
+    @Test
+    void testNoAllocationPerElementInBindingPath() throws Exception {
+        // The codec does not allocate, so that only the allocations of the binding path are measured
+        assertThat(measureBestAllocationPerElement(new SharedMemoryMetricCodec(), StreamingUnmarshaller::next))
+                .isLessThan(1.0);
+    }
+
+    /**
+     * Keeps the best of several passes, the first ones running before the code paths are compiled.
+     */
+    private double measureBestAllocationPerElement(ElementCodec<?> codec, ElementAction action) throws Exception {
+        ThreadMXBean threadBean = (ThreadMXBean) getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        double allocation = Double.MAX_VALUE;
+        for (int i = 0; i < PASSES; i++) {
+            allocation = Math.min(allocation, measureAllocationPerElement(threadBean, threadId, codec, action));
+        }
+        return allocation;
+    }
+
+    private double measureAllocationPerElement(ThreadMXBean threadBean, long threadId, ElementCodec<?> codec, ElementAction action) throws Exception {
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            if (codec != null) {
+                unmarshaller.setCodec(codec);
+            }
+            unmarshaller.open(Path.of(FILE_NAME));
+            for (int i = 0; i < WARMUP_ELEMENTS; i++) {
+                action.apply(unmarshaller);
+            }
+
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            int count = 0;
+            while (unmarshaller.hasNext()) {
+                action.apply(unmarshaller);
+                count++;
+            }
+            long after = threadBean.getThreadAllocatedBytes(threadId);
+            return (double) (after - before) / count;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ElementAction {
+
+        void apply(StreamingUnmarshaller unmarshaller) throws Exception;
+
+    }
+
+    private static class SharedMemoryMetricCodec implements ElementCodec<MemoryMetric> {
+
+        private final MemoryMetric metric = new MemoryMetric();
+
+        @Override
+        public Class<MemoryMetric> getType() {
+            return MemoryMetric.class;
+        }
+
+        @Override
+        public MemoryMetric read(XMLStreamReader reader) throws XMLStreamException {
+            CodecSupport.skipElement(reader);
+            return metric;
+        }
+
+        @Override
+        public void write(XMLStreamWriter writer, QName name, MemoryMetric element) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
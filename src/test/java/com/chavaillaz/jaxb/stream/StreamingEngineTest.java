@@ -0,0 +1,225 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.*;
+import jakarta.xml.bind.JAXBContext;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static java.util.Collections.synchronizedList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StreamingEngineTest {
+
+    public static final String FILE_NAME = "metrics-engine.xml";
+
+    @Test
+    void testConcurrentReadingWithSharedEngine() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).build();
+        List<Metric> writtenMetrics = writeMetrics(engine, FILE_NAME);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Metric>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(readMetrics(engine, FILE_NAME)));
+            }
+            for (Future<List<Metric>> result : results) {
+                assertThat(result.get()).isEqualTo(writtenMetrics);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testSplitFileIntoRanges() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).build();
+        List<Metric> writtenMetrics = writeManyMetrics(engine, FILE_NAME, 300);
+
+        List<FileRange> ranges = engine.split(Path.of(FILE_NAME), 4);
+        assertThat(ranges).hasSize(4);
+
+        List<Metric> readMetrics = new ArrayList<>();
+        for (FileRange range : ranges) {
+            try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+                unmarshaller.open(range);
+                unmarshaller.iterate((type, element) -> readMetrics.add((Metric) element));
+            }
+        }
+        assertThat(readMetrics).isEqualTo(writtenMetrics);
+    }
+
+    @Test
+    void testParallelIterationOverRanges() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).build();
+        List<Metric> writtenMetrics = writeManyMetrics(engine, FILE_NAME, 300);
+
+        List<Metric> readMetrics = synchronizedList(new ArrayList<>());
+        engine.iterate(Path.of(FILE_NAME), 4, (type, element) -> readMetrics.add((Metric) element));
+        assertThat(readMetrics).containsExactlyInAnyOrderElementsOf(writtenMetrics);
+    }
+
+    @Test
+    void testSharedContextForAllTypes() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).sharedContext(true).build();
+        JAXBContext context = engine.getContext(DiskMetric.class);
+        assertThat(engine.getContext(MemoryMetric.class)).isSameAs(context);
+        assertThat(engine.getContext(ProcessorMetric.class)).isSameAs(context);
+        assertThat(engine.getType("disk")).isEqualTo(DiskMetric.class);
+        assertThat(engine.getType("unknown")).isNull();
+    }
+
+    @Test
+    void testUnsynchronizedStreams() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).synchronizedStreams(false).build();
+        assertThat(engine.newMarshaller(MetricsList.class)).isInstanceOf(UnsynchronizedStreamingMarshaller.class);
+        assertThat(engine.newUnmarshaller()).isInstanceOf(UnsynchronizedStreamingUnmarshaller.class);
+
+        List<Metric> writtenMetrics = writeManyMetrics(engine, FILE_NAME, 100);
+        List<Metric> readMetrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(Path.of(FILE_NAME));
+            readMetrics.add((Metric) unmarshaller.next());
+            unmarshaller.skipNext();
+            unmarshaller.iterate((type, element) -> readMetrics.add((Metric) element));
+        }
+        writtenMetrics.remove(1);
+        assertThat(readMetrics).isEqualTo(writtenMetrics);
+    }
+
+    @Test
+    void testSkipUnknownElements() throws Exception {
+        List<Metric> writtenMetrics = writeManyMetrics(StreamingEngine.builder().types(TYPES).build(), FILE_NAME, 100);
+        int elementCount = writtenMetrics.size();
+        writtenMetrics.removeIf(metric -> !(metric instanceof DiskMetric));
+
+        StreamingEngine engine = StreamingEngine.builder().types(DiskMetric.class).skipUnknown(true).build();
+        List<Metric> readMetrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            unmarshaller.iterate((type, element) -> readMetrics.add((Metric) element));
+            // The unknown elements skipped are counted like the other ones
+            assertThat(unmarshaller.getOrdinal()).isEqualTo(elementCount);
+        }
+        assertThat(readMetrics).isEqualTo(writtenMetrics);
+
+        StreamingEngine strictEngine = StreamingEngine.builder().types(MemoryMetric.class).build();
+        try (StreamingUnmarshaller unmarshaller = strictEngine.newUnmarshaller()) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThrows(XMLStreamException.class, unmarshaller::getNextType);
+        }
+    }
+
+    @Test
+    void testMetricsOfStreams() throws Exception {
+        StreamingStatistics statistics = new StreamingStatistics();
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).metrics(statistics).build();
+        writeManyMetrics(engine, FILE_NAME, 100);
+        long fileSize = Files.size(Path.of(FILE_NAME));
+        assertThat(statistics.getBytesWritten()).isEqualTo(fileSize);
+        assertThat(statistics.getType(DiskMetric.class).getWritten()).isEqualTo(100);
+        assertThat(statistics.getType(MemoryMetric.class).getWriteLatency().getCount()).isEqualTo(100);
+
+        List<Metric> readMetrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            unmarshaller.iterate((type, element) -> readMetrics.add((Metric) element));
+        }
+        assertThat(readMetrics).hasSize(200);
+        assertThat(statistics.getBytesRead()).isEqualTo(fileSize);
+        assertThat(statistics.getParsingLatency().getCount()).isEqualTo(200);
+        assertThat(statistics.getParsingTime()).isPositive().isEqualTo(statistics.getParsingLatency().getTotal());
+        assertThat(statistics.getTypes()).containsOnlyKeys(DiskMetric.class, MemoryMetric.class);
+
+        StreamingStatistics.TypeStatistics disks = statistics.getType(DiskMetric.class);
+        assertThat(disks.getRead()).isEqualTo(100);
+        assertThat(disks.getConsumerLatency().getCount()).isEqualTo(100);
+        LatencyHistogram latency = disks.getReadLatency();
+        assertThat(latency.getPercentile(50)).isPositive().isLessThanOrEqualTo(latency.getPercentile(99));
+        assertThat(latency.getPercentile(100)).isEqualTo(latency.getMax());
+        assertThat(latency.getMean()).isPositive().isLessThanOrEqualTo(latency.getMax());
+        assertThrows(IllegalArgumentException.class, () -> latency.getPercentile(101));
+
+        // The elements skipped are measured as parsing, without being counted as read
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThat(unmarshaller.stream(MemoryMetric.class).count()).isEqualTo(100);
+        }
+        assertThat(statistics.getParsingLatency().getCount()).isEqualTo(400);
+        assertThat(disks.getRead()).isEqualTo(100);
+        assertThat(statistics.getType(MemoryMetric.class).getRead()).isEqualTo(200);
+    }
+
+    @Test
+    void testMissingXmlRootElementAnnotation() {
+        StreamingEngine.Builder builder = StreamingEngine.builder();
+        assertThrows(IllegalArgumentException.class, () -> builder.type(Object.class));
+        assertThrows(IllegalArgumentException.class, () -> StreamingEngine.getDefault().newMarshaller(Object.class));
+    }
+
+    private List<Metric> writeMetrics(StreamingEngine engine, String fileName) throws Exception {
+        List<Metric> metrics = List.of(new DiskMetric(), new MemoryMetric(), new ProcessorMetric());
+        try (StreamingMarshaller marshaller = engine.newMarshaller(MetricsList.class)) {
+            marshaller.open(new FileOutputStream(fileName));
+            marshaller.write(DiskMetric.class, (DiskMetric) metrics.get(0));
+            marshaller.write(MemoryMetric.class, (MemoryMetric) metrics.get(1));
+            marshaller.write(ProcessorMetric.class, (ProcessorMetric) metrics.get(2));
+        }
+        return metrics;
+    }
+
+    static List<Metric> writeManyMetrics(StreamingEngine engine, String fileName, int count) throws Exception {
+        return writeManyMetrics(engine, fileName, count, i -> {
+            DiskMetric disk = new DiskMetric();
+            disk.setDisk("disk-" + i);
+            return disk;
+        });
+    }
+
+    static List<Metric> writeManyNonAsciiMetrics(StreamingEngine engine, String fileName, int count) throws Exception {
+        // Non-ASCII names to check that offsets are given in bytes
+        return writeManyMetrics(engine, fileName, count, i -> new DiskMetric("disque-é€𝄞-" + i, i, i, i));
+    }
+
+    private static List<Metric> writeManyMetrics(StreamingEngine engine, String fileName, int count, IntFunction<DiskMetric> disks) throws Exception {
+        List<Metric> metrics = new ArrayList<>();
+        try (StreamingMarshaller marshaller = engine.newMarshaller(MetricsList.class)) {
+            marshaller.open(new FileOutputStream(fileName));
+            for (int i = 0; i < count; i++) {
+                DiskMetric disk = disks.apply(i);
+                marshaller.write(DiskMetric.class, disk);
+                metrics.add(disk);
+                MemoryMetric memory = new MemoryMetric();
+                marshaller.write(MemoryMetric.class, memory);
+                metrics.add(memory);
+            }
+        }
+        return metrics;
+    }
+
+    private Callable<List<Metric>> readMetrics(StreamingEngine engine, String fileName) {
+        return () -> {
+            List<Metric> metrics = new ArrayList<>();
+            try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+                unmarshaller.open(new FileInputStream(fileName));
+                unmarshaller.iterate((type, element) -> metrics.add((Metric) element));
+            }
+            return metrics;
+        };
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.chavaillaz.jaxb.stream;
+
+import com.chavaillaz.jaxb.stream.metric.DiskMetric;
+import com.chavaillaz.jaxb.stream.metric.MemoryMetric;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static com.chavaillaz.jaxb.stream.StreamingEngineTest.writeManyMetrics;
+import static com.chavaillaz.jaxb.stream.StreamingTest.TYPES;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingEventsTest {
+
+    public static final String FILE_NAME = "metrics-events.xml";
+    public static final String RECORDING_NAME = "metrics-events.jfr";
+
+    @Test
+    void testFlightRecorderEvents() throws Exception {
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).build();
+        try (Recording recording = new Recording()) {
+            recording.enable("com.chavaillaz.jaxb.stream.Stream");
+            recording.enable("com.chavaillaz.jaxb.stream.Batch");
+            recording.enable("com.chavaillaz.jaxb.stream.Element").withThreshold(Duration.ZERO);
+            recording.enable("com.chavaillaz.jaxb.stream.Context");
+            recording.start();
+
+            new ContextCache(1).getContext(DiskMetric.class, MemoryMetric.class);
+            writeManyMetrics(engine, FILE_NAME, 10);
+            try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+                unmarshaller.open(Path.of(FILE_NAME));
+                while (unmarshaller.nextBatch(8, (type, element) -> { }) > 0) {
+                    // Read all the elements by batches
+                }
+            }
+
+            recording.stop();
+            recording.dump(Path.of(RECORDING_NAME));
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(Path.of(RECORDING_NAME));
+        List<RecordedEvent> streams = events(events, "com.chavaillaz.jaxb.stream.Stream");
+        assertThat(streams).hasSize(2);
+        long fileSize = Files.size(Path.of(FILE_NAME));
+        assertThat(streams).allSatisfy(event -> {
+            assertThat(event.getLong("size")).isEqualTo(fileSize);
+            assertThat(event.getLong("elements")).isEqualTo(20);
+        });
+        assertThat(streams).extracting(event -> event.getString("operation")).containsExactlyInAnyOrder("Write", "Read");
+        assertThat(streams).extracting(event -> event.getString("file")).contains(Path.of(FILE_NAME).toString());
+
+        assertThat(events(events, "com.chavaillaz.jaxb.stream.Batch"))
+                .extracting(event -> event.getInt("elements"))
+                .containsExactly(8, 8, 4, 0);
+
+        List<RecordedEvent> elements = events(events, "com.chavaillaz.jaxb.stream.Element");
+        assertThat(elements).hasSize(40);
+        assertThat(elements).allSatisfy(event -> assertThat(event.getLong("length")).isPositive());
+        assertThat(elements).extracting(event -> event.getClass("type").getName())
+                .containsOnly(DiskMetric.class.getName(), MemoryMetric.class.getName());
+
+        assertThat(events(events, "com.chavaillaz.jaxb.stream.Context"))
+                .extracting(event -> event.getString("types"))
+                .containsExactly(DiskMetric.class.getName() + ", " + MemoryMetric.class.getName());
+    }
+
+    private static List<RecordedEvent> events(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(toList());
+    }
+
+}
@@ -3,15 +3,33 @@ package com.chavaillaz.jaxb.stream;
 import com.chavaillaz.jaxb.stream.metric.*;
 import jakarta.xml.bind.JAXBException;
 import org.junit.jupiter.api.Test;
+import org.mockito.MockMakers;
 
+import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.chavaillaz.jaxb.stream.metric.DiskMetric.getMetricsAllDisks;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
@@ -20,6 +38,11 @@ class StreamingTest {
 
     public static final String FILE_NAME = "metrics.xml";
     public static final Class<?>[] TYPES = { DiskMetric.class, MemoryMetric.class, ProcessorMetric.class };
+    public static final String HOSTS_XML = "<metrics>"
+            + "<memory host=\"a\"><freeMemory>1</freeMemory><maxMemory>2</maxMemory><totalMemory>3</totalMemory></memory>"
+            + "<memory host=\"b\"><freeMemory>4</freeMemory><maxMemory>5</maxMemory><totalMemory>6</totalMemory></memory>"
+            + "<memory host=\"a\"><!-- last --><freeMemory>7</freeMemory><maxMemory>8</maxMemory><totalMemory>9</totalMemory></memory>"
+            + "</metrics>";
 
     @Test
     void testSuccessfulWritingAndReading() {
@@ -28,6 +51,294 @@ class StreamingTest {
         assertThat(readMetrics).isEqualTo(writtenMetrics);
     }
 
+    @Test
+    void testSuccessfulReadingWithSharedContext() throws Exception {
+        List<Metric> writtenMetrics = writeMetrics(FILE_NAME);
+        List<Metric> readMetrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = StreamingUnmarshaller.withSharedContext(TYPES)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            unmarshaller.iterate((type, element) -> readMetrics.add((Metric) element));
+        }
+        assertThat(readMetrics).isEqualTo(writtenMetrics);
+    }
+
+    @Test
+    void testSuccessfulReadingFromMappedFile() throws Exception {
+        List<Metric> writtenMetrics = writeMetrics(FILE_NAME);
+        List<Metric> readMetrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.open(Path.of(FILE_NAME));
+            assertThat(unmarshaller.getInputLength()).isEqualTo(Files.size(Path.of(FILE_NAME)));
+            unmarshaller.iterate((type, element) -> readMetrics.add((Metric) element));
+        }
+        assertThat(readMetrics).isEqualTo(writtenMetrics);
+    }
+
+    @Test
+    void testMappedInputStreamAcrossWindows() throws Exception {
+        writeMetrics(FILE_NAME);
+        byte[] expected = Files.readAllBytes(Path.of(FILE_NAME));
+        try (FileChannel channel = FileChannel.open(Path.of(FILE_NAME));
+             InputStream input = new MappedInputStream(channel, 0, channel.size(), false, 7)) {
+            assertThat(input.readAllBytes()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void testReadingByBatches() throws Exception {
+        List<Metric> writtenMetrics = writeMetrics(FILE_NAME);
+        List<Object> readMetrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThat(unmarshaller.drainTo(readMetrics, 2)).isEqualTo(2);
+            assertThat(unmarshaller.nextBatch(1000, (type, element) -> readMetrics.add(element)))
+                    .isEqualTo(writtenMetrics.size() - 2);
+            assertThat(unmarshaller.nextBatch(1000, (type, element) -> readMetrics.add(element))).isZero();
+        }
+        assertThat(readMetrics).isEqualTo(writtenMetrics);
+    }
+
+    @Test
+    void testReadingTypedBatches() throws Exception {
+        List<Metric> writtenMetrics = writeMetrics(FILE_NAME);
+        List<Metric> readMetrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThat(unmarshaller.drainTo(MemoryMetric.class, readMetrics, 1000)).isEqualTo(1);
+            assertThat(unmarshaller.hasNext()).isFalse();
+        }
+        assertThat(readMetrics).containsExactly(writtenMetrics.stream()
+                .filter(MemoryMetric.class::isInstance)
+                .toArray(Metric[]::new));
+    }
+
+    @Test
+    void testFilterBeforeUnmarshalling() throws Exception {
+        List<Metric> expectedMetrics = new ArrayList<>();
+        try (StreamingMarshaller marshaller = new StreamingMarshaller(MetricsList.class)) {
+            marshaller.open(new FileOutputStream(FILE_NAME));
+            for (int i = 0; i < 100; i++) {
+                ProcessorMetric processor = new ProcessorMetric(i / 100.0, 0, 1);
+                marshaller.write(ProcessorMetric.class, processor);
+                if (processor.getSystemLoad() > 0.9) {
+                    expectedMetrics.add(processor);
+                }
+                MemoryMetric memory = new MemoryMetric();
+                marshaller.write(MemoryMetric.class, memory);
+                expectedMetrics.add(memory);
+            }
+        }
+
+        List<Metric> readMetrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.addFilter(ProcessorMetric.class, ElementFilter.child("systemLoad", value -> Double.parseDouble(value) > 0.9));
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            unmarshaller.iterate((type, element) -> readMetrics.add((Metric) element));
+        }
+        assertThat(readMetrics).isEqualTo(expectedMetrics);
+    }
+
+    @Test
+    void testAttributeFilterEvaluatedOnStartTag() throws Exception {
+        AtomicInteger evaluations = new AtomicInteger();
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.addFilter(MemoryMetric.class, ElementFilter.attribute("host", value -> {
+                evaluations.incrementAndGet();
+                return value.equals("a");
+            }));
+            unmarshaller.open(new ByteArrayInputStream(HOSTS_XML.getBytes(UTF_8)));
+            assertThat(unmarshaller.getNextType()).isEqualTo(MemoryMetric.class);
+            assertThat(unmarshaller.next(MemoryMetric.class)).isEqualTo(new MemoryMetric(1, 2, 3));
+            assertThat(unmarshaller.next(MemoryMetric.class)).isEqualTo(new MemoryMetric(7, 8, 9));
+            assertThat(unmarshaller.hasNext()).isFalse();
+            assertThat(unmarshaller.getOrdinal()).isEqualTo(3);
+        }
+        assertThat(evaluations).hasValue(3);
+    }
+
+    @Test
+    void testFilteredElementsReplayed() throws Exception {
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.addFilter(MemoryMetric.class, ElementFilter.attribute("host", "a"::equals)
+                    .and(ElementFilter.child("freeMemory", value -> !value.equals("1"))));
+            unmarshaller.open(new ByteArrayInputStream(HOSTS_XML.getBytes(UTF_8)));
+            ElementFragment fragment = unmarshaller.nextFragment();
+            assertThat(fragment.getType()).isEqualTo(MemoryMetric.class);
+            assertThat(new String(fragment.getContent(), UTF_8)).contains("<freeMemory>7</freeMemory>");
+            assertThat(unmarshaller.hasNext()).isFalse();
+        }
+
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.addFilter(MemoryMetric.class, ElementFilter.child("maxMemory", value -> !value.equals("5")));
+            unmarshaller.open(new ByteArrayInputStream(HOSTS_XML.getBytes(UTF_8)));
+            assertThat(unmarshaller.stream(MemoryMetric.class).collect(toList()))
+                    .containsExactly(new MemoryMetric(1, 2, 3), new MemoryMetric(7, 8, 9));
+        }
+    }
+
+    @Test
+    void testProjectionOfChildElements() throws Exception {
+        try (StreamingMarshaller marshaller = new StreamingMarshaller(MetricsList.class)) {
+            marshaller.open(new FileOutputStream(FILE_NAME));
+            for (int i = 0; i < 10; i++) {
+                marshaller.write(DiskMetric.class, new DiskMetric("disk-" + i, -1, -1, -1));
+            }
+        }
+
+        List<DiskMetric> readMetrics = new ArrayList<>();
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.setProjection(DiskMetric.class, "disk");
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            unmarshaller.iterate((type, element) -> readMetrics.add((DiskMetric) element));
+        }
+        assertThat(readMetrics).hasSize(10);
+        for (int i = 0; i < readMetrics.size(); i++) {
+            assertThat(readMetrics.get(i).getDisk()).isEqualTo("disk-" + i);
+            assertThat(readMetrics.get(i).getTotalCapacity()).isNotNegative();
+        }
+    }
+
+    @Test
+    void testRecyclingElements() throws Exception {
+        try (StreamingMarshaller marshaller = new StreamingMarshaller(MetricsList.class)) {
+            marshaller.open(new FileOutputStream(FILE_NAME));
+            for (int i = 0; i < 10; i++) {
+                marshaller.write(DiskMetric.class, new DiskMetric("disk-" + i, i, i, i));
+            }
+        }
+
+        DiskMetricFactory factory = new DiskMetricFactory();
+        List<DiskMetric> readMetrics = new ArrayList<>();
+        List<String> readDisks = new ArrayList<>();
+        // The generated codecs are not used while an object factory is set
+        StreamingEngine engine = StreamingEngine.builder().types(TYPES).generatedCodecs(true).build();
+        try (StreamingUnmarshaller unmarshaller = engine.newUnmarshaller()) {
+            unmarshaller.setObjectFactory(factory);
+            assertThat(unmarshaller.getCodec(DiskMetric.class)).isNull();
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            unmarshaller.iterate((type, element) -> {
+                DiskMetric metric = (DiskMetric) element;
+                readMetrics.add(metric);
+                readDisks.add(metric.getDisk() + ":" + metric.getTotalCapacity());
+                factory.pool.release(metric);
+            });
+        }
+        assertThat(readDisks).hasSize(10);
+        for (int i = 0; i < readDisks.size(); i++) {
+            assertThat(readDisks.get(i)).isEqualTo("disk-" + i + ":" + i);
+            assertThat(readMetrics.get(i)).isSameAs(readMetrics.get(0));
+        }
+        assertThat(factory.pool.size()).isEqualTo(1);
+    }
+
+    @Test
+    void testHandWrittenCodec() throws Exception {
+        List<Metric> writtenMetrics = new ArrayList<>();
+        try (StreamingMarshaller marshaller = new StreamingMarshaller(MetricsList.class)) {
+            marshaller.setCodec(new MemoryMetricCodec());
+            marshaller.open(new FileOutputStream(FILE_NAME));
+            writeMetrics(marshaller, writtenMetrics, MemoryMetric.class, new MemoryMetric(1, 2, 3));
+            writeMetrics(marshaller, writtenMetrics, DiskMetric.class, new DiskMetric("disk", 4, 5, 6));
+        }
+        assertThat(Files.readString(Path.of(FILE_NAME))).contains("<memory free=\"1\" max=\"2\" total=\"3\"");
+
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.setCodec(new MemoryMetricCodec());
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThat(unmarshaller.stream().collect(toList())).isEqualTo(writtenMetrics);
+        }
+
+        // Without the codec, the attributes are ignored by JAXB
+        assertThat(readMetrics(FILE_NAME, TYPES).get(0)).isNotEqualTo(writtenMetrics.get(0));
+    }
+
+    @Test
+    void testStreamOfElements() throws Exception {
+        List<Metric> writtenMetrics = writeMetrics(FILE_NAME);
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThat(unmarshaller.stream().collect(toList())).isEqualTo(writtenMetrics);
+        }
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            List<Metric> memoryMetrics = writtenMetrics.stream()
+                    .filter(MemoryMetric.class::isInstance)
+                    .collect(toList());
+            assertThat(unmarshaller.stream(MemoryMetric.class).collect(toList())).isEqualTo(memoryMetrics);
+        }
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThat(unmarshaller.stream().limit(1).collect(toList())).containsExactly(writtenMetrics.get(0));
+            assertThat(unmarshaller.hasNext()).isTrue();
+        }
+    }
+
+    @Test
+    void testParallelStreamOfElements() throws Exception {
+        List<Metric> writtenMetrics = writeMetrics(FILE_NAME);
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThat(unmarshaller.stream().parallel().collect(toList())).isEqualTo(writtenMetrics);
+        }
+    }
+
+    @Test
+    void testSizeEstimatedOnlyFromKnownLength() throws Exception {
+        writeMetrics(FILE_NAME);
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            assertThat(unmarshaller.getInputLength()).isEqualTo(-1);
+            assertThat(unmarshaller.stream().spliterator().estimateSize()).isEqualTo(Long.MAX_VALUE);
+        }
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.open(Path.of(FILE_NAME));
+            Spliterator<Object> spliterator = unmarshaller.stream().spliterator();
+            assertThat(spliterator.estimateSize()).isEqualTo(Files.size(Path.of(FILE_NAME)));
+            spliterator.forEachRemaining(element -> { });
+            assertThat(unmarshaller.getBytesRead()).isEqualTo(Files.size(Path.of(FILE_NAME)));
+            assertThat(spliterator.estimateSize()).isLessThanOrEqualTo(Files.size(Path.of(FILE_NAME)));
+        }
+    }
+
+    @Test
+    void testPublisherOfElements() throws Exception {
+        List<Metric> writtenMetrics = writeMetrics(FILE_NAME);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (StreamingUnmarshaller unmarshaller = new StreamingUnmarshaller(TYPES)) {
+            unmarshaller.open(new FileInputStream(FILE_NAME));
+            List<Metric> readMetrics = new ArrayList<>();
+            CompletableFuture<List<Metric>> completion = new CompletableFuture<>();
+            unmarshaller.publisher(executor).subscribe(new Flow.Subscriber<>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(Object item) {
+                    readMetrics.add((Metric) item);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    completion.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    completion.complete(readMetrics);
+                }
+            });
+            assertThat(completion.get(10, SECONDS)).isEqualTo(writtenMetrics);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     void testInvalidTypeForNextElement() throws Exception {
         writeMetrics(FILE_NAME);
@@ -70,13 +381,13 @@ class StreamingTest {
 
     @Test
     void testOpenTwice() throws Exception {
-        try (StreamingMarshaller marshaller = spy(new StreamingMarshaller(MetricsList.class))) {
+        try (StreamingMarshaller marshaller = spyOf(new StreamingMarshaller(MetricsList.class))) {
             marshaller.open(new FileOutputStream(FILE_NAME));
             marshaller.open(new FileOutputStream(FILE_NAME));
             verify(marshaller, times(1)).close();
         }
 
-        try (StreamingUnmarshaller unmarshaller = spy(new StreamingUnmarshaller(DiskMetric.class))) {
+        try (StreamingUnmarshaller unmarshaller = spyOf(new StreamingUnmarshaller(DiskMetric.class))) {
             unmarshaller.open(new FileInputStream(FILE_NAME));
             unmarshaller.open(new FileInputStream(FILE_NAME));
             verify(unmarshaller, times(1)).close();
@@ -89,6 +400,17 @@ class StreamingTest {
         new StreamingUnmarshaller(DiskMetric.class).close();
     }
 
+    /**
+     * Creates a spy with the subclass mock maker, so that the streaming classes are not instrumented for the whole JVM.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T spyOf(T instance) {
+        return (T) mock(instance.getClass(), withSettings()
+                .spiedInstance(instance)
+                .defaultAnswer(CALLS_REAL_METHODS)
+                .mockMaker(MockMakers.SUBCLASS));
+    }
+
     private List<Metric> writeMetrics(String fileName) {
         List<Metric> metrics = new ArrayList<>();
         try (StreamingMarshaller marshaller = new StreamingMarshaller("metrics")) {
@@ -124,4 +446,41 @@ class StreamingTest {
         return unmarshaller.next(unmarshaller.getNextType());
     }
 
+    public static class DiskMetricFactory {
+
+        private final ElementPool<DiskMetric> pool = new ElementPool<>(DiskMetric.class, 4);
+
+        public DiskMetric createDiskMetric() {
+            return pool.acquire();
+        }
+
+    }
+
+    public static class MemoryMetricCodec implements ElementCodec<MemoryMetric> {
+
+        @Override
+        public Class<MemoryMetric> getType() {
+            return MemoryMetric.class;
+        }
+
+        @Override
+        public MemoryMetric read(XMLStreamReader reader) throws XMLStreamException {
+            MemoryMetric metric = new MemoryMetric(
+                    Long.parseLong(reader.getAttributeValue(null, "free")),
+                    Long.parseLong(reader.getAttributeValue(null, "max")),
+                    Long.parseLong(reader.getAttributeValue(null, "total")));
+            CodecSupport.skipElement(reader);
+            return metric;
+        }
+
+        @Override
+        public void write(XMLStreamWriter writer, QName name, MemoryMetric element) throws XMLStreamException {
+            writer.writeEmptyElement(name.getLocalPart());
+            writer.writeAttribute("free", String.valueOf(element.getFreeMemory()));
+            writer.writeAttribute("max", String.valueOf(element.getMaxMemory()));
+            writer.writeAttribute("total", String.valueOf(element.getTotalMemory()));
+        }
+
+    }
+
 }